@@ -61,7 +61,8 @@ public class Assignment {
         simulator = NetworkSimulator.getInstance();
 
         // Initialise the simulator
-        simulator.initSimulator(nMsgSim, loss, corrupt, delay, seed);
+        // The amount of logging and where it goes is set with -Dtransport.log=off|summary|event|debug and -Dtransport.logfile=<file>
+        simulator.initSimulator(nMsgSim, loss, corrupt, delay, seed, SimulatorLog.fromSystemProperties());
 
         // Run the simulator
         simulator.runSimulator();
@@ -0,0 +1,20 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * The original loss model: every packet is lost independently, with the same probability.
+ */
+public class BernoulliLoss implements LossModel {
+
+    private final double probability;
+
+    public BernoulliLoss(double probability) {
+        this.probability = probability;
+    }
+
+    @Override
+    public boolean isLost(Packet packet, Random rand) {
+        return rand.nextDouble() < probability;
+    }
+}
@@ -0,0 +1,90 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * Corruption by independent bit errors: every bit of a packet's sequence number, acknowledgement number, checksum,
+ * payload and SACK blocks is flipped with probability ber, so a packet of n such bits is corrupted with probability
+ * 1 - (1 - ber)^n and a long packet may have several bits flipped. (The length and flags fields of the wire format are
+ * left alone: a receiver would find a packet with those damaged malformed, just as it finds a corrupted one.)
+ * Rather than a draw per bit, the distance to the next error is drawn from the geometric distribution.
+ */
+public class BitErrorCorruption implements CorruptionModel {
+
+    // Bits of the header fields that can be flipped: sequence number, acknowledgement number and checksum
+    private static final int HEADERBITS = 96;
+
+    private final double ber;
+    private final double logNoError;    // log(1 - ber), for drawing the distance to the next error
+
+    public BitErrorCorruption(double ber) {
+        if (ber < 0 || ber >= 1) {
+            throw new IllegalArgumentException("Bit error rate must be from 0 to below 1, not " + ber);
+        }
+        this.ber = ber;
+        logNoError = Math.log1p(-ber);
+    }
+
+    /**
+     * Creates a model with the bit error rate at which a packet with a MAXDATASIZE-character payload and no SACK blocks
+     * is corrupted with a given probability, so the run's corruption probability keeps its meaning for packets of the default size.
+     * @param probability the corruption probability of such a packet
+     * @return the model
+     */
+    public static BitErrorCorruption withReferenceProbability(double probability) {
+        int bits = HEADERBITS + 8 * NetworkSimulator.MAXDATASIZE;
+        return new BitErrorCorruption(-Math.expm1(Math.log1p(-probability) / bits));
+    }
+
+    // The number of intact bits before the next error
+    private long nextError(Random rand) {
+        if (ber == 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (Math.log(1 - rand.nextDouble()) / logNoError);
+    }
+
+    @Override
+    public Packet corrupt(Packet p, Random rand) {
+        long payloadBits = 8L * p.getPayloadLength();
+        long bits = HEADERBITS + payloadBits + (p.hasSack() ? 32L * p.getSack().length : 0);
+        long position = nextError(rand);
+        if (position >= bits) {
+            return null;
+        }
+
+        // the copy shares its payload bytes with the original, so a changed payload is a new array
+        Packet packet = new Packet(p);
+        byte[] payload = null;
+        while (position < bits) {
+            if (position < HEADERBITS) {
+                int mask = 1 << (31 - (int) (position % 32));
+                if (position < 32) {
+                    packet.setSeqnum(packet.getSeqnum() ^ mask);
+                } else if (position < 64) {
+                    packet.setAcknum(packet.getAcknum() ^ mask);
+                } else {
+                    packet.setChecksum(packet.getChecksum() ^ mask);
+                }
+            } else if (position < HEADERBITS + payloadBits) {
+                if (payload == null) {
+                    payload = packet.getPayloadBytes().clone();
+                }
+                long bit = position - HEADERBITS;
+                payload[(int) (bit / 8)] ^= 0x80 >>> (int) (bit % 8);
+            } else {
+                long bit = position - HEADERBITS - payloadBits;
+                packet.getSack()[(int) (bit / 32)] ^= 1 << (31 - (int) (bit % 32));
+            }
+            long gap = nextError(rand);
+            if (gap >= bits) {
+                break;
+            }
+            position += 1 + gap;
+        }
+        if (payload != null) {
+            packet.setPayloadBytes(payload);
+        }
+        return packet;
+    }
+}
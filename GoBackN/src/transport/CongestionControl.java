@@ -0,0 +1,49 @@
+package transport;
+
+/**
+ * Decides how many packets a windowed sender may have in flight, in addition to its fixed window.
+ * The sender tells the controller about new ACKs, duplicate ACKs and timeouts, and uses min(getWindow(), its window).
+ * Chosen per run with transport.congestion: "none" (the default, the fixed window only) or "reno".
+ */
+public interface CongestionControl {
+
+    /**
+     * @return the congestion window in packets; may be fractional, the sender uses at least 1
+     */
+    double getWindow();
+
+    /**
+     * Called when an ACK acknowledges new packets.
+     * @param acknowledged the number of packets newly acknowledged
+     */
+    void onAck(long acknowledged);
+
+    /**
+     * Called for each duplicate ACK, i.e. one that acknowledges nothing new.
+     * @param duplicates the number of duplicate ACKs received in a row, including this one
+     */
+    void onDuplicateAck(int duplicates);
+
+    /**
+     * Called when the retransmission timer expires.
+     */
+    void onTimeout();
+
+    /**
+     * Creates the congestion controller selected by the configuration.
+     * @param config the simulator's configuration
+     * @return a new controller
+     */
+    static CongestionControl forConfiguration(Configuration config) {
+        String name = config.getString("congestion", "none");
+        switch (name) {
+            case "none":
+                return new NoCongestionControl();
+            case "reno":
+                return new RenoCongestionControl(config.getDouble("initialcwnd", 1), config.getDouble("ssthresh", Double.MAX_VALUE),
+                        config.getInt("dupackthreshold", 3));
+            default:
+                throw new IllegalArgumentException("Unknown congestion control " + name);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package transport;
+
+/**
+ * CRC-32C (Castagnoli, as used by iSCSI and SCTP), computed a byte at a time from a table.
+ * java.util.zip.CRC32C needs Java 9, and these projects build for Java 8, so the table is built here.
+ * As a CRC is linear, a header change is applied by XORing in the CRC (without its initial value and final XOR)
+ * of the changed bits followed by the bytes after them.
+ */
+public class Crc32cChecksum implements PacketChecksum {
+
+    public static final Crc32cChecksum INSTANCE = new Crc32cChecksum();
+
+    private static final int POLYNOMIAL = 0x82F63B78;   // the Castagnoli polynomial, bit-reversed
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[n] = crc;
+        }
+    }
+
+    @Override
+    public int compute(int seqnum, int acknum, byte[] payload, int[] sack) {
+        int crc = 0xFFFFFFFF;
+        for (byte b : payload) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+        }
+        if (sack != null) {
+            for (int entry : sack) {
+                crc = updateInt(crc, entry);
+            }
+        }
+        crc = updateInt(crc, seqnum);
+        crc = updateInt(crc, acknum);
+        return ~crc;
+    }
+
+    @Override
+    public int updateSeqnum(int checksum, int oldSeqnum, int newSeqnum) {
+        // the sequence number is followed by the 4 bytes of the acknowledgement number
+        return checksum ^ updateInt(updateInt(0, oldSeqnum ^ newSeqnum), 0);
+    }
+
+    @Override
+    public int updateAcknum(int checksum, int oldAcknum, int newAcknum) {
+        return checksum ^ updateInt(0, oldAcknum ^ newAcknum);
+    }
+
+    // Adds the 4 bytes of a value, big-endian, to a CRC
+    private static int updateInt(int crc, int value) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ (value >>> 24)) & 0xFF];
+        crc = (crc >>> 8) ^ TABLE[(crc ^ (value >>> 16)) & 0xFF];
+        crc = (crc >>> 8) ^ TABLE[(crc ^ (value >>> 8)) & 0xFF];
+        crc = (crc >>> 8) ^ TABLE[(crc ^ value) & 0xFF];
+        return crc;
+    }
+}
@@ -0,0 +1,74 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * How the simulated channel delivers the packets that get through in one direction (see Configuration.forDirection for
+ * setting the directions apart). By default packets arrive in the order they were sent (transport.fifo=true), each after
+ * the one before it. With transport.fifo=false each packet's delay is drawn on its own, so packets sent close together
+ * can overtake each other.
+ * On top of that a packet is reordered with probability transport.reorder: it's held back by up to transport.reorderdelay
+ * more time units (default 20), and the packets after it don't wait for it. A packet is duplicated with probability
+ * transport.duplicate: a second copy arrives up to transport.reorderdelay time units after the first.
+ */
+public class DeliveryModel {
+
+    private final boolean fifo;
+    private final double reorderProb;
+    private final double reorderDelay;
+    private final double duplicateProb;
+
+    public DeliveryModel(boolean fifo, double reorderProb, double reorderDelay, double duplicateProb) {
+        if (reorderDelay < 0) {
+            throw new IllegalArgumentException("Reorder delay must be at least 0, not " + reorderDelay);
+        }
+        this.fifo = fifo;
+        this.reorderProb = reorderProb;
+        this.reorderDelay = reorderDelay;
+        this.duplicateProb = duplicateProb;
+    }
+
+    /**
+     * Creates the delivery model selected by the configuration.
+     * @param config the settings for one direction (see Configuration.forDirection)
+     * @return the model
+     */
+    public static DeliveryModel forConfiguration(Configuration config) {
+        return new DeliveryModel(config.getBoolean("fifo", true), config.getDouble("reorder", 0),
+                config.getDouble("reorderdelay", 20), config.getDouble("duplicate", 0));
+    }
+
+    // Whether each packet arrives after the ones sent before it
+    public boolean isFifo() {
+        return fifo;
+    }
+
+    // Whether the model ever reorders or duplicates packets
+    public boolean isDisordering() {
+        return reorderProb > 0 || duplicateProb > 0;
+    }
+
+    /**
+     * Decides whether the next packet is reordered. Draws nothing from the random number generator unless reordering is on.
+     * @param rand the simulator's random number generator
+     * @return how much later than its normal arrival the packet arrives, or 0 if it isn't reordered
+     */
+    public double reorderDelay(Random rand) {
+        if (reorderProb > 0 && rand.nextDouble() < reorderProb) {
+            return rand.nextDouble() * reorderDelay;
+        }
+        return 0;
+    }
+
+    /**
+     * Decides whether the next packet is duplicated. Draws nothing from the random number generator unless duplication is on.
+     * @param rand the simulator's random number generator
+     * @return how long after the packet its copy arrives, or -1 if it isn't duplicated
+     */
+    public double duplicateDelay(Random rand) {
+        if (duplicateProb > 0 && rand.nextDouble() < duplicateProb) {
+            return rand.nextDouble() * reorderDelay;
+        }
+        return -1;
+    }
+}
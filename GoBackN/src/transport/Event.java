@@ -9,6 +9,10 @@ public class Event {
     private EventType type;         // the type of event (see NetworkSimulator.java)
     private int entity;             // the entity at which the event will be executed (sender or received)
     private Packet packet;          // the packet involved in this simulated event (can be null)
+    private Message message;        // for a FROMAPP event, a message offered again after the send queue was full (null for a new message)
+    private long order;             // the position in which the event was added to the EventList (used to break ties)
+    private boolean pending;        // true while the event is in the EventList and has not been cancelled
+    private boolean overtakable;    // for a FROMNETWORK event, whether later packets may arrive before it (see EventList.getLastPacketTime)
 
     public Event(double t, EventType ty, int ent) {
         time = t;
@@ -24,10 +28,18 @@ public class Event {
         packet = p;
     }
 
+    public Event(double t, EventType ty, int ent, Message m) {
+        time = t;
+        type = ty;
+        entity = ent;
+        message = m;
+    }
+
     public double getTime() {
         return time;
     }
 
+    // Do not change the time of an event that is already in the EventList; remove it and add it again instead
     public void setTime(double time) {
         this.time = time;
     }
@@ -56,6 +68,39 @@ public class Event {
         this.packet = packet;
     }
 
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public boolean isOvertakable() {
+        return overtakable;
+    }
+
+    // Set before the event is added to the EventList
+    public void setOvertakable(boolean overtakable) {
+        this.overtakable = overtakable;
+    }
+
+    long getOrder() {
+        return order;
+    }
+
+    void setOrder(long order) {
+        this.order = order;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
     @Override
     public String toString() {
         return ("time: " + time + "  type: " + type + "  entity: " + entity + "packet: " + packet);
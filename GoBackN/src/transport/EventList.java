@@ -1,21 +1,56 @@
 package transport;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
- * A list of simulated events scheduled for execution
+ * A list of simulated events scheduled for execution.
+ * Events are kept in a binary heap ordered by scheduled time, so add and removeNext are O(log n).
+ * Events scheduled for the same time are executed in the order they were added, so seeded runs are repeatable.
+ * Cancelled events are only marked as such and are skipped (and dropped) when they reach the head of the heap.
  */
 public class EventList {
 
-    // the list of events
-    private final List<Event> list;
+    // the list of events, soonest first
+    private final PriorityQueue<Event> list;
+
+    // the number of events added so far, used to break ties between events scheduled for the same time
+    private long added;
+
+    // the number of cancelled events still sitting in the heap
+    private int cancelled;
+
+    // the latest pending FROMNETWORK event for each destination entity
+    private final Map<Integer, Event> lastArrival;
 
     public EventList() {
-        list = new ArrayList<>();
+        list = new PriorityQueue<>(EventList::compare);
+        added = 0;
+        cancelled = 0;
+        lastArrival = new HashMap<>();
+    }
+
+    // soonest time first; for equal times, the event added first comes first
+    private static int compare(Event a, Event b) {
+        int byTime = Double.compare(a.getTime(), b.getTime());
+        if (byTime != 0) {
+            return byTime;
+        }
+        return Long.compare(a.getOrder(), b.getOrder());
     }
 
     public boolean add(Event e) {
+        e.setOrder(added++);
+        e.setPending(true);
+
+        if (e.getType() == EventType.FROMNETWORK && !e.isOvertakable()) {
+            Event last = lastArrival.get(e.getEntity());
+            if (last == null || compare(e, last) > 0) {
+                lastArrival.put(e.getEntity(), e);
+            }
+        }
+
         return list.add(e);
     }
 
@@ -25,73 +60,119 @@ public class EventList {
      * @return an Event or null if the list is empty
      */
     public Event removeNext() {
-        if (list.isEmpty()) {
-            return null;
+        Event next = list.poll();
+
+        while (next != null && !next.isPending()) {
+            cancelled--;
+            next = list.poll();
         }
 
-        int index = 0;
+        if (next != null) {
+            next.setPending(false);
+            forgetArrival(next);
+        }
 
-        double soonest = ((Event) list.get(index)).getTime();
+        return next;
+    }
 
-        for (int i = 0; i < list.size(); i++) {
-            if ((list.get(i)).getTime() < soonest) {
-                soonest = (list.get(i)).getTime();
-                index = i;
+    /**
+     * returns the event that is scheduled for execution the soonest, leaving it in the list
+     *
+     * @return an Event or null if the list is empty
+     */
+    public Event peekNext() {
+        Event next = list.peek();
+
+        while (next != null && !next.isPending()) {
+            list.poll();
+            cancelled--;
+            next = list.peek();
+        }
+
+        return next;
+    }
+
+    /**
+     * Cancels an event that was previously added, in O(1). The event is left in the heap and skipped by removeNext.
+     * The event handle can be kept by the caller (e.g. a NetworkHost keeps its pending timer).
+     *
+     * @param e the event to cancel
+     * @return true if the event was pending and is now cancelled, false if it had already been executed or cancelled
+     */
+    public boolean cancel(Event e) {
+        if (e == null || !e.isPending()) {
+            return false;
+        }
+
+        e.setPending(false);
+        cancelled++;
+        if (forgetArrival(e)) {
+            // rare: a packet arrival was cancelled, so find the new latest arrival the slow way
+            for (Event ev : list) {
+                Event last = lastArrival.get(ev.getEntity());
+                if (ev.isPending() && ev.getType() == EventType.FROMNETWORK && !ev.isOvertakable() && (last == null || compare(ev, last) > 0)) {
+                    lastArrival.put(ev.getEntity(), ev);
+                }
             }
         }
 
-        Event next = (Event) list.get(index);
-        list.remove(next);
+        // Do not let cancelled events pile up if timers keep being restarted
+        if (cancelled > 64 && cancelled > list.size() / 2) {
+            list.removeIf(ev -> !ev.isPending());
+            cancelled = 0;
+        }
 
-        return next;
+        return true;
     }
 
     /**
      * Removes and returns the timerEvent event for the specified network entity (sender or receiver). 
      * Each NetworkHost (A or B) can have up to one timerEvent pending (1 TIMERINTERRUPT Event in the list).
+     * This searches the whole list; NetworkHost keeps a handle to its timer and uses cancel() instead.
      *
      * @param entity
      * @return
      */
     public Event removeTimer(int entity) {
-        int timerIndex = -1;
-        Event timerEvent = null;
-
-        for (int i = 0; i < list.size(); i++) {
-            if (((list.get(i)).getType() == EventType.TIMERINTERRUPT) && ((list.get(i)).getEntity() == entity)) {
-                timerIndex = i;
-                break;
+        for (Event ev : list) {
+            if (ev.isPending() && (ev.getType() == EventType.TIMERINTERRUPT) && (ev.getEntity() == entity)) {
+                cancel(ev);
+                return ev;
             }
         }
 
-        if (timerIndex != -1) {
-            timerEvent = list.get(timerIndex);
-            list.remove(timerEvent);
-        }
-
-        return timerEvent;
+        return null;
+    }
 
+    // Stop tracking e as the latest arrival for its entity, if it is
+    private boolean forgetArrival(Event e) {
+        if (e.getType() == EventType.FROMNETWORK && lastArrival.get(e.getEntity()) == e) {
+            lastArrival.remove(e.getEntity());
+            return true;
+        }
+        return false;
     }
 
     /**
-     * Returns the scheduled time for the next packet arrival at the provided network entity.
-     * No reordering takes place, so I can safely remove the first FROMNETWORK Event in the list.
+     * Returns the scheduled time for the last pending packet arrival at the provided network entity, or 0.0 if there is none.
+     * The latest arrival for each entity is tracked as events are added and removed, so this is O(1).
+     * Overtakable arrivals (packets the channel reordered or duplicated) are left out, so later packets don't wait for them.
      *
      * @param entityTo
      * @return
      */
     public double getLastPacketTime(int entityTo) {
-        double time = 0.0;
+        Event last = lastArrival.get(entityTo);
         
-        for (Event ev : list) {
-            if ((ev).getType() == EventType.FROMNETWORK) {
-                if ((ev).getEntity() == entityTo) {
-                    time = (ev).getTime();
-                }
-            }
+        if (last == null) {
+            return 0.0;
         }
 
-        return time;
+        return last.getTime();
+    }
+
+    public int size() {
+        return list.size() - cancelled;
     }
 
     @Override
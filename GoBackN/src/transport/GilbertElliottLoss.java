@@ -0,0 +1,60 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * The Gilbert-Elliott model of bursty loss: the channel is either in a good state, where a packet is lost with probability
+ * goodLoss, or a bad state, where it's lost with probability badLoss. Before each packet the channel moves from good to bad
+ * with probability p, and from bad to good with probability r, so a bad spell lasts 1 / r packets on average.
+ * With the defaults (goodLoss 0, badLoss 1) this is the simple Gilbert model, where every loss is part of a burst of
+ * 1 / r packets on average.
+ */
+public class GilbertElliottLoss implements LossModel {
+
+    private final double p;
+    private final double r;
+    private final double goodLoss;
+    private final double badLoss;
+
+    private boolean bad;        // the channel starts in the good state
+
+    public GilbertElliottLoss(double p, double r, double goodLoss, double badLoss) {
+        if (p < 0 || p > 1 || r <= 0 || r > 1) {
+            throw new IllegalArgumentException("Gilbert-Elliott transition probabilities out of range: p " + p + ", r " + r);
+        }
+        this.p = p;
+        this.r = r;
+        this.goodLoss = goodLoss;
+        this.badLoss = badLoss;
+    }
+
+    /**
+     * Creates a model with a given average loss probability and mean length of a bad spell:
+     * r = 1 / burst, and p such that the share of time spent in the bad state, p / (p + r), gives the average loss.
+     * @param averageLoss the average loss probability, from goodLoss to just under badLoss
+     * @param burst the mean number of packets in a bad spell, at least 1
+     * @param goodLoss the loss probability in the good state
+     * @param badLoss the loss probability in the bad state
+     * @return the model
+     */
+    public static GilbertElliottLoss withAverageLoss(double averageLoss, double burst, double goodLoss, double badLoss) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("Mean loss burst must be at least 1 packet, not " + burst);
+        }
+        if (averageLoss < goodLoss || averageLoss >= badLoss) {
+            throw new IllegalArgumentException("Average loss " + averageLoss + " must be from the good state's loss " + goodLoss
+                    + " to below the bad state's " + badLoss);
+        }
+        double r = 1 / burst;
+        double badShare = (averageLoss - goodLoss) / (badLoss - goodLoss);
+        return new GilbertElliottLoss(Math.min(1, r * badShare / (1 - badShare)), r, goodLoss, badLoss);
+    }
+
+    @Override
+    public boolean isLost(Packet packet, Random rand) {
+        if (bad ? rand.nextDouble() < r : rand.nextDouble() < p) {
+            bad = !bad;
+        }
+        return rand.nextDouble() < (bad ? badLoss : goodLoss);
+    }
+}
@@ -0,0 +1,58 @@
+package transport;
+
+/**
+ * The Internet checksum (RFC 1071): the ones' complement of the ones' complement sum of the covered bytes as 16-bit
+ * big-endian words, an odd final byte padded with zero. Header changes are applied with RFC 1624's HC' = ~(~HC + ~m + m').
+ */
+public class InternetChecksum implements PacketChecksum {
+
+    public static final InternetChecksum INSTANCE = new InternetChecksum();
+
+    @Override
+    public int compute(int seqnum, int acknum, byte[] payload, int[] sack) {
+        long sum = 0;
+        int i = 0;
+        for (; i + 1 < payload.length; i += 2) {
+            sum += ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+        }
+        if (i < payload.length) {
+            sum += (payload[i] & 0xFF) << 8;
+        }
+        if (sack != null) {
+            for (int entry : sack) {
+                sum += addWords(entry);
+            }
+        }
+        sum += addWords(seqnum) + addWords(acknum);
+        return ~fold(sum) & 0xFFFF;
+    }
+
+    @Override
+    public int updateSeqnum(int checksum, int oldSeqnum, int newSeqnum) {
+        return update(checksum, oldSeqnum, newSeqnum);
+    }
+
+    @Override
+    public int updateAcknum(int checksum, int oldAcknum, int newAcknum) {
+        return update(checksum, oldAcknum, newAcknum);
+    }
+
+    // The two 16-bit words of a 32-bit field, added
+    private static long addWords(int value) {
+        return (value >>> 16) + (value & 0xFFFF);
+    }
+
+    // Folds the carries of a sum back into its low 16 bits
+    private static int fold(long sum) {
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (int) sum;
+    }
+
+    // RFC 1624 eqn. 3, for both words of a 32-bit field at once
+    private static int update(int checksum, int oldValue, int newValue) {
+        long sum = (~checksum & 0xFFFF) + (~(oldValue >>> 16) & 0xFFFF) + (~oldValue & 0xFFFF) + addWords(newValue);
+        return ~fold(sum) & 0xFFFF;
+    }
+}
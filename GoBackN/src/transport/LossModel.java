@@ -0,0 +1,40 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * Decides which packets the channel loses in one direction.
+ * Chosen per run with transport.lossmodel, and per direction with transport.lossmodel.atob or .btoa (see Configuration.forDirection):
+ * "bernoulli" (the default, each packet lost independently with the loss probability) or "gilbert-elliott" (losses in bursts).
+ * The loss probability is the run's, unless transport.loss (or transport.loss.atob, .btoa) gives another one.
+ */
+public interface LossModel {
+
+    /**
+     * Decides the fate of the next packet sent in this direction
+     * @param packet the packet
+     * @param rand the simulator's random number generator
+     * @return true if the channel loses the packet
+     */
+    boolean isLost(Packet packet, Random rand);
+
+    /**
+     * Creates the loss model selected by the configuration.
+     * @param config the settings for one direction (see Configuration.forDirection)
+     * @param lossProb the run's loss probability
+     * @return the model, which keeps its own state, so each direction needs one
+     */
+    static LossModel forConfiguration(Configuration config, double lossProb) {
+        double probability = config.getDouble("loss", lossProb);
+        String name = config.getString("lossmodel", "bernoulli");
+        switch (name) {
+            case "bernoulli":
+                return new BernoulliLoss(probability);
+            case "gilbert-elliott":
+                return GilbertElliottLoss.withAverageLoss(probability, config.getDouble("lossburst", 4),
+                        config.getDouble("gegoodloss", 0), config.getDouble("gebadloss", 1));
+            default:
+                throw new IllegalArgumentException("Unknown loss model " + name);
+        }
+    }
+}
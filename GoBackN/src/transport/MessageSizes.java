@@ -0,0 +1,74 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * The sizes of the messages the simulated application sends, drawn from a distribution chosen per run:
+ * transport.messagesize is the mean size in characters (default MAXDATASIZE) and transport.messagesizedist the distribution,
+ * "fixed" (the default, every message the mean size), "uniform" (1 to twice the mean), "exponential", or "pareto"
+ * (heavy-tailed, with shape transport.messagesizeshape, default 1.5). Sizes are at least 1 and at most transport.messagesizemax.
+ * Sizes come from their own random number generator, so changing them doesn't change what the channel does to the packets.
+ */
+public class MessageSizes {
+
+    private final String distribution;
+    private final double mean;
+    private final double shape;
+    private final int max;
+    private final Random rand;
+
+    public MessageSizes(String distribution, double mean, double shape, int max, long seed) {
+        if (mean < 1) {
+            throw new IllegalArgumentException("Mean message size must be at least 1, not " + mean);
+        }
+        switch (distribution) {
+            case "fixed":
+            case "uniform":
+            case "exponential":
+                break;
+            case "pareto":
+                if (shape <= 1) {
+                    throw new IllegalArgumentException("Pareto shape must be more than 1 for a finite mean, not " + shape);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message size distribution " + distribution);
+        }
+        this.distribution = distribution;
+        this.mean = mean;
+        this.shape = shape;
+        this.max = max;
+        this.rand = new Random(seed);
+    }
+
+    /**
+     * Creates the message size distribution selected by the configuration.
+     * @param config the simulator's configuration
+     * @param seed the simulation's seed
+     * @return the distribution
+     */
+    public static MessageSizes forConfiguration(Configuration config, long seed) {
+        return new MessageSizes(config.getString("messagesizedist", "fixed"), config.getDouble("messagesize", NetworkSimulator.MAXDATASIZE),
+                config.getDouble("messagesizeshape", 1.5), config.getInt("messagesizemax", Integer.MAX_VALUE), seed);
+    }
+
+    // The size of the next message
+    public int next() {
+        double size;
+        switch (distribution) {
+            case "uniform":
+                size = 1 + rand.nextDouble() * (2 * mean - 1);
+                break;
+            case "exponential":
+                size = -mean * Math.log(1 - rand.nextDouble());
+                break;
+            case "pareto":
+                // scale chosen so the mean is 'mean'
+                size = mean * (shape - 1) / shape / Math.pow(1 - rand.nextDouble(), 1 / shape);
+                break;
+            default:
+                size = mean;
+        }
+        return (int) Math.max(1, Math.min(max, Math.round(size)));
+    }
+}
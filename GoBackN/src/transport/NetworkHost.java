@@ -2,10 +2,16 @@ package transport;
 
 public class NetworkHost {
 
-    public static final int MAXDATASIZE = 20;   // This constant controls the maximum size of the buffer in a Message and in a Packet
+    public static final int MAXDATASIZE = 20;   // The default size of a Message and of a Packet payload (see transport.messagesize, transport.mtu)
 
     private final int entity;                   // can be A or B; i.e. the sender or the receiver
 
+    private final NetworkSimulator simulator;   // the simulator this host belongs to
+
+    private Event timer;                        // handle to the last timer started by this host (null if none)
+
+    private Event flushTimer;                   // handle to the last flush timer started by this host (null if none)
+
     // Default versions of methods to implement. 
     public void init() {
         throw new UnsupportedOperationException("Init method called for entity " + entity + " but not implemented.");
@@ -23,47 +29,74 @@ public class NetworkHost {
         throw new UnsupportedOperationException("TimerInterupt method called for entity " + entity + " but not implemented.");
     }
 
-    // initialise NetworkHost to either A or B - the sender or the receiver
+    public void flushTimerInterrupt() {
+        throw new UnsupportedOperationException("FlushTimerInterupt method called for entity " + entity + " but not implemented.");
+    }
+
+    // initialise NetworkHost to either A or B - the sender or the receiver - of the shared simulator
     public NetworkHost(int entityName) {
+        this(entityName, NetworkSimulator.getInstance());
+    }
+
+    // initialise NetworkHost to either A or B - the sender or the receiver - of the given simulator
+    public NetworkHost(int entityName, NetworkSimulator sim) {
         entity = entityName;
+        simulator = sim;
     }
 
     // Start the timer for this NetworkHost (A or B)
     // Only a single timer is supported for each NetworkHost
-    // Attempting to start a second timer will result in just removing and adding the same timer in the EventList
+    // Attempting to start a second timer will leave the running timer as it is
     public void startTimer(double increment) {
-        System.out.println("startTimer: starting timer at " + NetworkSimulator.getInstance().getTime());
+        if (getLog().isEnabled(LogLevel.DEBUG)) {
+            getLog().println("startTimer: starting timer at " + simulator.getTime());
+        }
         
-        Event t = NetworkSimulator.getInstance().getEventList().removeTimer(entity);
-
-        if (t != null) {
-            System.out.println("startTimer: Warning: Attempting to start a timer that is already running");
-            NetworkSimulator.getInstance().getEventList().add(t);
+        if (timer != null && timer.isPending()) {
+            if (getLog().isEnabled(LogLevel.EVENT)) {
+                getLog().println("startTimer: Warning: Attempting to start a timer that is already running");
+            }
         } else {
-            Event timer = new Event(NetworkSimulator.getInstance().getTime() + increment, EventType.TIMERINTERRUPT, entity);
-            NetworkSimulator.getInstance().getEventList().add(timer);
+            timer = new Event(simulator.getTime() + increment, EventType.TIMERINTERRUPT, entity);
+            simulator.getEventList().add(timer);
+            simulator.getMetrics().timerStarted();
         }
     }
     
     // Stop the timer for this NetworkHost (A or B)
+    // The timer handle is cancelled in place, so this does not search the EventList
     public void stopTimer() {
-        System.out.println("stopTimer: stopping timer at " + NetworkSimulator.getInstance().getTime());
+        if (getLog().isEnabled(LogLevel.DEBUG)) {
+            getLog().println("stopTimer: stopping timer at " + simulator.getTime());
+        }
 
-        Event timer = NetworkSimulator.getInstance().getEventList().removeTimer(entity);
-        if (timer == null) {
-            System.out.println("stopTimer: Warning: Unable to cancel your timer, which is not set.");
+        if (!simulator.getEventList().cancel(timer)) {
+            if (getLog().isEnabled(LogLevel.EVENT)) {
+                getLog().println("stopTimer: Warning: Unable to cancel your timer, which is not set.");
+            }
         }
+        timer = null;
     }
 
     protected final void udtSend(Packet p) {
         int destination;
         double arrivalTime;
         
-        // Use a copy of the supplied packet at this method may corrupt its data.
-        // We want to keep the original copy for retransmission purposes
-        Packet packet = new Packet(p);
+        // The channel passes the supplied packet itself on to the other side (hosts don't modify packets they receive).
+        // Only a packet that is corrupted is copied first, as we want to keep the original copy for retransmission purposes
+        Packet packet = p;
+
+        // The sender retransmits by handing the same buffered Packet to udtSend again
+        if (entity == NetworkSimulator.A) {
+            simulator.getMetrics().packetSent(p.isSent(), p.getEncodedLength());
+        } else {
+            simulator.getMetrics().ackSent(p.getEncodedLength());
+        }
+        p.setSent(true);
 
-        System.out.println("udtSend: " + packet);
+        if (getLog().isEnabled(LogLevel.DEBUG)) {
+            getLog().println("udtSend: " + packet);
+        }
 
         // Set destination to be the 'other side' of the network; B if we are A or vice versa.
         switch (entity) {
@@ -74,61 +107,178 @@ public class NetworkHost {
                 destination = NetworkSimulator.A;
                 break;
             default:
-                System.out.println("udtSend: Warning: invalid packet sender");
+                if (getLog().isEnabled(LogLevel.SUMMARY)) {
+                    getLog().println("udtSend: Warning: invalid packet sender");
+                }
                 return;
         }
 
-        // Simulate losses by doing nothing
-        if (NetworkSimulator.getInstance().getRand().nextDouble() < NetworkSimulator.getInstance().getLossProb()) {
-            System.out.println("udtSend: simulating packet being lost");
+        // With a link model (transport.bandwidth), the packet first has to find room in the queue of the link to the other side;
+        // it then takes up the link even if the channel goes on to lose it
+        Link link = simulator.getLink(destination);
+        double linkArrivalTime = 0;
+        if (link != null) {
+            linkArrivalTime = link.send(simulator.getTime(), p.getEncodedLength());
+            if (linkArrivalTime < 0) {
+                if (getLog().isEnabled(LogLevel.EVENT)) {
+                    getLog().println("udtSend: link queue full, packet dropped");
+                }
+                return;
+            }
+        }
+
+        // Simulate losses by doing nothing (see LossModel)
+        int direction = destination == NetworkSimulator.B ? Link.TOB : Link.TOA;
+        if (simulator.getLossModel(destination).isLost(p, simulator.getRand())) {
+            if (getLog().isEnabled(LogLevel.EVENT)) {
+                getLog().println("udtSend: simulating packet being lost");
+            }
+            simulator.getMetrics().packetLost(direction);
             return;
         }
+        simulator.getMetrics().packetNotLost(direction);
 
-        // Simulate corruption
-        if (NetworkSimulator.getInstance().getRand().nextDouble() < NetworkSimulator.getInstance().getCorruptProb()) {
-            System.out.println("udtSend: packet being corrupted");
+        // Simulate corruption (see CorruptionModel); the original is kept intact for retransmission
+        Packet corrupted = simulator.getCorruptionModel(destination).corrupt(p, simulator.getRand());
+        if (corrupted != null) {
+            if (getLog().isEnabled(LogLevel.EVENT)) {
+                getLog().println("udtSend: packet being corrupted");
+            }
+            simulator.getMetrics().packetCorrupted();
+            packet = corrupted;
+        }
 
-            double x = NetworkSimulator.getInstance().getRand().nextDouble();
-            if (x < 0.75) {
-                // corrupt the payload - by changing the first character
-                String payload = packet.getPayload();
+        // Over a real network (transport.network=udp) the packet goes out as a datagram now and arrives whenever it does
+        if (simulator.getNetwork() != null) {
+            simulator.getNetwork().send(destination, packet);
+            return;
+        }
 
-                if (payload.length() < 2) {
-                    payload = "=";
-                } else {
-                    //payload = "?" + payload.substring(payload.length() - 1);
-                    payload = "=" + payload.substring(1);
+        DeliveryModel delivery = simulator.getDeliveryModel(destination);
+        if (link != null) {
+            // The link decided when the packet arrives: after the packets queued ahead of it, its serialisation and propagation
+            arrivalTime = linkArrivalTime;
+        } else {
+            // Decide when the packet will arrive.  Unless the channel is set not to keep packets in order (see DeliveryModel),
+            // the packet will arrive 1 to 10 time units after the last packet sent by this sender
+            arrivalTime = delivery.isFifo() ? simulator.getEventList().getLastPacketTime(destination) : 0.0;
 
-                }
-                packet.setPayload(payload);
-            } else if (x < 0.875) {
-                // corrupt the sequence number
-                packet.setSeqnum(Math.abs(NetworkSimulator.getInstance().getRand().nextInt()));
-            } else {
-                // corrupt the acknowledgment number
-                packet.setAcknum(Math.abs(NetworkSimulator.getInstance().getRand().nextInt()));
+            if (arrivalTime <= 0.0) {
+                arrivalTime = simulator.getTime();
             }
+
+            //arrivalTime = arrivalTime + 1.0 + (rand.nextDouble() * 19.0);
+            arrivalTime = arrivalTime + 1.0 + Math.abs(5.0 * simulator.getRand().nextGaussian() + 9.0);
         }
 
-        // Decide when the packet will arrive.  Since the medium cannot reorder, the packet will arrive 1 to 10 time units after the last packet sent by this sender
-        arrivalTime = NetworkSimulator.getInstance().getEventList().getLastPacketTime(destination);
+        // Finally, create and schedule this event
+        if (getLog().isEnabled(LogLevel.DEBUG)) {
+            getLog().println("udtSend: Scheduling arrival on other side");
+        }
+        
+        // A reordered packet is held back, and the packets after it are free to overtake it
+        double reorderDelay = delivery.reorderDelay(simulator.getRand());
+        Event arrival = new Event(arrivalTime + reorderDelay, EventType.FROMNETWORK, destination, packet);
+        if (reorderDelay > 0) {
+            if (getLog().isEnabled(LogLevel.EVENT)) {
+                getLog().println("udtSend: packet being reordered");
+            }
+            simulator.getMetrics().packetReordered();
+            arrival.setOvertakable(true);
+        }
+        simulator.getEventList().add(arrival);
 
-        if (arrivalTime <= 0.0) {
-            arrivalTime = NetworkSimulator.getInstance().getTime();
+        // A duplicate shares the packet, as hosts don't modify the packets they receive
+        double duplicateDelay = delivery.duplicateDelay(simulator.getRand());
+        if (duplicateDelay >= 0) {
+            if (getLog().isEnabled(LogLevel.EVENT)) {
+                getLog().println("udtSend: packet being duplicated");
+            }
+            simulator.getMetrics().packetDuplicated();
+            Event duplicate = new Event(arrival.getTime() + duplicateDelay, EventType.FROMNETWORK, destination, packet);
+            duplicate.setOvertakable(true);
+            simulator.getEventList().add(duplicate);
         }
 
-        //arrivalTime = arrivalTime + 1.0 + (rand.nextDouble() * 19.0);
-        arrivalTime = arrivalTime + 1.0 + Math.abs(5.0 * NetworkSimulator.getInstance().getRand().nextGaussian() + 9.0);
+        if (destination == NetworkSimulator.B) {
+            simulator.getMetrics().dataInFlight(simulator.getTime(), arrivalTime);
+        }
+    }
 
-        // Finally, create and schedule this event
-        System.out.println("udtSend: Scheduling arrival on other side");
-        
-        Event arrival = new Event(arrivalTime, EventType.FROMNETWORK, destination, packet);
-        NetworkSimulator.getInstance().getEventList().add(arrival);
+    // Record that the sender could not accept a message from the application and discarded it
+    protected final void dropMessage(Message message) {
+        simulator.getMetrics().messageDropped();
+
+        if (getLog().isEnabled(LogLevel.EVENT)) {
+            getLog().println("dropMessage: message dropped at " + entity + ":" + message);
+        }
+    }
+
+    // Puts a message the sender can't send yet at the end of the simulator's send queue.
+    // If the queue is full the application gets back pressure (transport.backpressure): it is blocked until there is room,
+    // the message is offered to output() again later, or the message is dropped.
+    protected final void queueMessage(Message message) {
+        if (!simulator.getSendQueue().offer(message, simulator.getTime())) {
+            if (!simulator.applicationBackpressure(message)) {
+                dropMessage(message);
+            }
+        }
+    }
+
+    // Takes the oldest message from the send queue (null if it's empty), unblocking the application if it was waiting for room
+    protected final Message nextQueuedMessage() {
+        Message message = simulator.getSendQueue().poll(simulator.getTime());
+        if (message != null) {
+            simulator.sendQueueSpace();
+        }
+        return message;
+    }
+
+    protected final boolean hasQueuedMessages() {
+        return !simulator.getSendQueue().isEmpty();
+    }
+
+    // Start the flush timer for this NetworkHost (A or B): a second timer, independent of the retransmission timer,
+    // for holding data back a short while (e.g. to coalesce messages). If it is already running it is left as it is.
+    protected final void startFlushTimer(double increment) {
+        if (flushTimer == null || !flushTimer.isPending()) {
+            flushTimer = new Event(simulator.getTime() + increment, EventType.FLUSHTIMER, entity);
+            simulator.getEventList().add(flushTimer);
+        }
+    }
+
+    // Stop the flush timer for this NetworkHost, if it is running
+    protected final void stopFlushTimer() {
+        if (flushTimer != null) {
+            simulator.getEventList().cancel(flushTimer);
+            flushTimer = null;
+        }
+    }
+
+    protected final boolean isFlushTimerRunning() {
+        return flushTimer != null && flushTimer.isPending();
+    }
+
+    // The checksum algorithm packets are computed and checked with in this run
+    protected final PacketChecksum getPacketChecksum() {
+        return simulator.getPacketChecksum();
     }
 
     public void deliverData(String dataSent) {
-        System.out.print("deliverData: data received at " + entity + ":");
-        System.out.println(dataSent);
+        simulator.getMetrics().messageDelivered(simulator.getTime(), dataSent.length());
+
+        if (getLog().isEnabled(LogLevel.EVENT)) {
+            getLog().println("deliverData: data received at " + entity + ":" + dataSent);
+        }
+    }
+
+    // The simulator this host belongs to
+    protected NetworkSimulator getSimulator() {
+        return simulator;
+    }
+
+    // The log of the simulator this host belongs to; check isEnabled() before building a message
+    protected SimulatorLog getLog() {
+        return simulator.getLog();
     }
 }
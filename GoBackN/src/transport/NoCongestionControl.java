@@ -0,0 +1,24 @@
+package transport;
+
+/**
+ * No congestion control: the sender is only limited by its own window.
+ */
+public class NoCongestionControl implements CongestionControl {
+
+    @Override
+    public double getWindow() {
+        return Double.MAX_VALUE;
+    }
+
+    @Override
+    public void onAck(long acknowledged) {
+    }
+
+    @Override
+    public void onDuplicateAck(int duplicates) {
+    }
+
+    @Override
+    public void onTimeout() {
+    }
+}
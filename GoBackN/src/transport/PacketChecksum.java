@@ -0,0 +1,67 @@
+package transport;
+
+/**
+ * Computes the checksum of a packet, without allocating.
+ * The checksum covers the payload bytes, then each SACK entry (4 bytes, big-endian), then the sequence and acknowledgement
+ * numbers (4 bytes each, big-endian); the header fields come last so a change to them can be applied incrementally.
+ * Chosen per run with transport.checksum: "sum" (the default, the sum of the fields and payload characters),
+ * "internet" (the 16-bit ones' complement Internet checksum) or "crc32c" (CRC-32C, Castagnoli).
+ */
+public interface PacketChecksum {
+
+    /**
+     * @param seqnum the sequence number
+     * @param acknum the acknowledgement number
+     * @param payload the payload bytes
+     * @param sack the SACK entries, or null
+     * @return the checksum of a packet with these fields
+     */
+    int compute(int seqnum, int acknum, byte[] payload, int[] sack);
+
+    /**
+     * Works out the checksum after the sequence number has changed, without going over the payload again.
+     * @param checksum the checksum before the change
+     * @param oldSeqnum the old sequence number
+     * @param newSeqnum the new sequence number
+     * @return the checksum of the packet with the new sequence number
+     */
+    int updateSeqnum(int checksum, int oldSeqnum, int newSeqnum);
+
+    /**
+     * Works out the checksum after the acknowledgement number has changed, without going over the payload again.
+     * @param checksum the checksum before the change
+     * @param oldAcknum the old acknowledgement number
+     * @param newAcknum the new acknowledgement number
+     * @return the checksum of the packet with the new acknowledgement number
+     */
+    int updateAcknum(int checksum, int oldAcknum, int newAcknum);
+
+    // The checksum of a packet's fields (ignoring the checksum it carries)
+    default int compute(Packet packet) {
+        return compute(packet.getSeqnum(), packet.getAcknum(), packet.getPayloadBytes(), packet.getSack());
+    }
+
+    // Whether the checksum a packet carries matches its fields, i.e. it is not known to be corrupted
+    default boolean isValid(Packet packet) {
+        return compute(packet) == packet.getChecksum();
+    }
+
+    /**
+     * Gives the checksum algorithm selected by the configuration.
+     * @param config the simulator's configuration
+     * @return the algorithm; implementations hold no state, so they can be shared
+     */
+    static PacketChecksum forConfiguration(Configuration config) {
+        String name = config.getString("checksum", "sum");
+        switch (name) {
+            case "sum":
+                return SumChecksum.INSTANCE;
+            case "internet":
+                return InternetChecksum.INSTANCE;
+            case "crc32c":
+                return Crc32cChecksum.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown checksum " + name);
+        }
+    }
+}
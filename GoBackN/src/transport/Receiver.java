@@ -1,39 +1,147 @@
 package transport;
 //Candidate Number: 184676
 
+import java.util.Arrays;
+
 public class Receiver extends NetworkHost {
-    //Values that won't change during execution, so declared as constant.
-    //-1 is used to mean null value as 0 is the min.
-    private final static int MINSEQUENCENUMBER = 0;
-    private final static int MAXSEQUENCENUMBER = 49;
+    //Default number of sequence numbers, used unless transport.sequencespace is set; must match the Sender's.
+    //Sequence numbers run from 0 to sequencespace - 1 and are held as unsigned ints, so the space can be as large as 2^32.
+    private final static long DEFAULTSEQUENCESPACE = 50;
+    //Delayed ACKs: by default every packet is acknowledged straight away (transport.ackevery = 1).
+    //Otherwise an ACK is sent for every ackevery-th packet in order, or transport.ackdelay after the first unacknowledged one.
+    private final static int DEFAULTACKEVERY = 1;
+    private final static double DEFAULTACKDELAY = 10;
+    //Selective acknowledgements (transport.sack, off by default): packets that arrive out of order but within the window
+    //(transport.window, as for the Sender) are kept rather than thrown away, and each ACK lists them in up to MAXSACKBLOCKS
+    //blocks of consecutive sequence numbers, so the Sender only has to resend the missing ones.
+    private final static int DEFAULTWINDOWSIZE = 8;
+    private final static int MAXSACKBLOCKS = 4;
+    //Message coalescing and fragmentation: a framed packet carries records "length:data", each a whole message or the last fragment
+    //of one, and "length+data", a fragment with more to follow. Messages are delivered one by one once they are whole.
+    
+    //The number of sequence numbers in this run.
+    private long sequenceSpace;
     
     //The sequence number an incoming packet should have to be accepted.
     private int expectedSequenceNumber;
     
+    //How many in-order packets to acknowledge with one ACK, and how long the first of them can wait for it.
+    private int ackEvery;
+    private double ackDelay;
+    //Packets delivered but not yet acknowledged, and whether the delayed ACK timer is running.
+    private int unacknowledgedPackets;
+    private boolean ackTimerRunning;
+    
+    //Whether SACK is on, and the packets received ahead of expectedSequenceNumber (null where none has arrived),
+    //in a ring indexed by distance from expectedSequenceNumber, which is in slot baseSlot.
+    //Only packets less than a window ahead are kept, so they never share a slot.
+    private boolean sackEnabled;
+    private int windowSize;
+    private Packet[] outOfOrderPackets;
+    private int outOfOrderCount;
+    private int baseSlot;
+    
+    //The fragments received so far of a message not yet whole.
+    private StringBuilder reassembly;
+    
     //Increase the expectedSequenceNumber, deals with wraparound, used after a packet is accepted.
     private void incrementExpectedSequenceNumber() {
-        expectedSequenceNumber += 1;
-        if (expectedSequenceNumber > MAXSEQUENCENUMBER) {
-            expectedSequenceNumber = MINSEQUENCENUMBER;
-        }
+        expectedSequenceNumber = (int) ((Integer.toUnsignedLong(expectedSequenceNumber) + 1) % sequenceSpace);
+        baseSlot = (baseSlot + 1) % windowSize;
     }
     
     //Previous sequence number is the highest ACK sent so far, used when a duplicate packet is received.
     private int getPreviousSequenceNumber() {
-        int previousSequenceNumber = expectedSequenceNumber - 1;
-        if (previousSequenceNumber < MINSEQUENCENUMBER) {
-            previousSequenceNumber = MAXSEQUENCENUMBER;
+        return (int) ((Integer.toUnsignedLong(expectedSequenceNumber) + sequenceSpace - 1) % sequenceSpace);
+    }
+    
+    //How far a sequence number is ahead of expectedSequenceNumber, accounting for wrap around.
+    private long distanceFromExpected(int seqNum) {
+        return Math.floorMod(Integer.toUnsignedLong(seqNum) - Integer.toUnsignedLong(expectedSequenceNumber), sequenceSpace);
+    }
+    
+    //The slot of outOfOrderPackets for a packet a given distance ahead of expectedSequenceNumber.
+    private int outOfOrderSlot(long distance) {
+        return (int) ((baseSlot + distance) % windowSize);
+    }
+    
+    /**
+     * Lists the packets held out of order as blocks of consecutive sequence numbers, lowest first.
+     * The scan stops at the last packet held, so it only goes as far into the window as the packets do.
+     * @return {first1, last1, first2, last2, ...} with at most MAXSACKBLOCKS blocks, or null if no packet is held.
+     */
+    private int[] getSackBlocks() {
+        if (outOfOrderCount == 0) {
+            return null;
+        }
+        int[] blocks = new int[2 * MAXSACKBLOCKS];
+        int length = 0;
+        boolean inBlock = false;
+        int found = 0;
+        for (long distance = 1; found < outOfOrderCount && length < blocks.length; distance++) {
+            int seqNum = (int) ((Integer.toUnsignedLong(expectedSequenceNumber) + distance) % sequenceSpace);
+            if (outOfOrderPackets[outOfOrderSlot(distance)] != null) {
+                found++;
+                if (!inBlock) {
+                    blocks[length++] = seqNum;
+                    inBlock = true;
+                }
+                blocks[length] = seqNum;
+            } else if (inBlock) {
+                length++;
+                inBlock = false;
+            }
         }
-        return previousSequenceNumber;
+        if (inBlock) {
+            length++;
+        }
+        return Arrays.copyOf(blocks, length);
     }
     
-    //Gets the checksum for a string by summing the ASCII value of every character.
-    private int checksumString (String string) {
-        int runningSum = 0;
-        for (char ch : string.toCharArray()) {
-            runningSum += (int) ch;
+    //Sends a (cumulative) ACK for the given sequence number, which also covers any delayed ACK.
+    //With SACK on, the ACK also lists the packets held out of order, and they are covered by its checksum.
+    private void sendAck(int ackNum) {
+        int packetSeqNum = -1;
+        int packetAckNum = ackNum;
+        String packetData = "";
+        int[] packetSack = sackEnabled ? getSackBlocks() : null;
+        Packet ack = new Packet(packetSeqNum, packetAckNum, 0, packetData, packetSack);
+        ack.setChecksum(getPacketChecksum().compute(ack));
+        udtSend(ack);
+        
+        unacknowledgedPackets = 0;
+        if (ackTimerRunning) {
+            stopTimer();
+            ackTimerRunning = false;
+        }
+    }
+    
+    //Delivers the payload of an accepted packet to the application: the message, or for a framed packet each message it completes, in order.
+    private void deliverPayload(Packet packet) {
+        String payload = packet.getPayload();
+        if (!packet.isFramed()) {
+            deliverData(payload);
+            return;
+        }
+        int start = 0;
+        while (start < payload.length()) {
+            int end = start;
+            while (Character.isDigit(payload.charAt(end))) {
+                end++;
+            }
+            int length = Integer.parseInt(payload.substring(start, end));
+            int dataStart = end + 1;
+            if (payload.charAt(end) == '+') {
+                reassembly.append(payload, dataStart, dataStart + length);
+            } else if (reassembly.length() == 0) {
+                deliverData(payload.substring(dataStart, dataStart + length));
+            } else {
+                reassembly.append(payload, dataStart, dataStart + length);
+                deliverData(reassembly.toString());
+                reassembly.setLength(0);
+            }
+            start = dataStart + length;
         }
-        return runningSum;
     }
     
     /**
@@ -42,8 +150,36 @@ public class Receiver extends NetworkHost {
      * @return false is the packet is definitely corrupted, true otherwise.
      */
     private boolean validateChecksum (Packet p) {
-        int calculatedChecksum = p.getSeqnum() + p.getAcknum() + checksumString(p.getPayload());
-        return calculatedChecksum == p.getChecksum();
+        return getPacketChecksum().isValid(p);
+    }
+    
+    /**
+     * Checks that a framed packet's payload is a whole number of records, as corruption the checksum misses
+     * (e.g. several bit errors cancelling out in a sum) can leave it unreadable.
+     * @param packet a packet whose checksum is valid.
+     * @return true if the packet isn't framed or its records can all be read.
+     */
+    private boolean validateFraming(Packet packet) {
+        if (!packet.isFramed()) {
+            return true;
+        }
+        String payload = packet.getPayload();
+        int start = 0;
+        while (start < payload.length()) {
+            int end = start;
+            while (end < payload.length() && end - start < 10 && Character.isDigit(payload.charAt(end))) {
+                end++;
+            }
+            if (end == start || end == payload.length() || (payload.charAt(end) != ':' && payload.charAt(end) != '+')) {
+                return false;
+            }
+            long length = Long.parseLong(payload.substring(start, end));
+            if (length > payload.length() - end - 1) {
+                return false;
+            }
+            start = end + 1 + (int) length;
+        }
+        return true;
     }
     
     //Constructor.
@@ -51,44 +187,88 @@ public class Receiver extends NetworkHost {
         super(entityName);
     }
     
-    //Initialise all non-constant class variables.
+    //Constructor for a host of a given simulator, so several simulations can run side by side.
+    public Receiver(int entityName, NetworkSimulator simulator) {
+        super(entityName, simulator);
+    }
+    
+    //Initialise all non-constant class variables, reading the sequence space from the simulator's configuration.
     @Override
     public void init() {
-        expectedSequenceNumber = MINSEQUENCENUMBER;
+        sequenceSpace = getSimulator().getConfiguration().getLong("sequencespace", DEFAULTSEQUENCESPACE);
+        ackEvery = getSimulator().getConfiguration().getInt("ackevery", DEFAULTACKEVERY);
+        ackDelay = getSimulator().getConfiguration().getDouble("ackdelay", DEFAULTACKDELAY);
+        sackEnabled = getSimulator().getConfiguration().getBoolean("sack", false);
+        windowSize = getSimulator().getConfiguration().getInt("window", DEFAULTWINDOWSIZE);
+        if (sackEnabled && 2L * windowSize > sequenceSpace) {
+            throw new IllegalArgumentException("With SACK the sequence space must be at least twice the window size, not " + sequenceSpace);
+        }
+        reassembly = new StringBuilder();
+        outOfOrderPackets = new Packet[windowSize];
+        outOfOrderCount = 0;
+        baseSlot = 0;
+        expectedSequenceNumber = 0;
+        unacknowledgedPackets = 0;
+        ackTimerRunning = false;
     }
     
     /**
      * Trigger when a packet is received from the sender (i.e as a result of udtSend()).
+     * An in-order packet is delivered and acknowledged, possibly with a delayed ACK shared with the next packets.
+     * Any other packet is answered straight away with the highest ACK so far, so the sender learns about the gap quickly.
+     * With SACK on, a packet less than a window ahead is kept until the gap before it is filled, and then delivered with it.
      * @param packet The received packet, possibly corrupt.
      */
     @Override
     public void input(Packet packet) {
         //Check that the packet isn't corrupt
-        if (validateChecksum(packet)) {
+        if (validateChecksum(packet) && validateFraming(packet)) {
             int seqNumber = packet.getSeqnum();
-            Packet outputPacket;
             //Check it's the expected packet, arriving in order
             if (seqNumber == expectedSequenceNumber) {
-                deliverData(packet.getPayload());
-                int packetSeqNum = -1;
-                int packetAckNum = seqNumber;
-                String packetData = "";
-                int packetChecksum = packetSeqNum + packetAckNum;
-                outputPacket = new Packet(packetSeqNum, packetAckNum, packetChecksum, packetData);
+                deliverPayload(packet);
                 incrementExpectedSequenceNumber();
+                unacknowledgedPackets++;
+                //Deliver the packets kept out of order that directly follow it; a filled gap is acknowledged at once
+                boolean gapFilled = false;
+                while (outOfOrderCount > 0 && outOfOrderPackets[baseSlot] != null) {
+                    deliverPayload(outOfOrderPackets[baseSlot]);
+                    outOfOrderPackets[baseSlot] = null;
+                    outOfOrderCount--;
+                    incrementExpectedSequenceNumber();
+                    gapFilled = true;
+                }
+                if (gapFilled || unacknowledgedPackets >= ackEvery) {
+                    sendAck(getPreviousSequenceNumber());
+                } else if (!ackTimerRunning) {
+                    startTimer(ackDelay);
+                    ackTimerRunning = true;
+                }
+            }
+            //With SACK on, keep a packet that's ahead of the expected one but within the window
+            else if (sackEnabled && Integer.toUnsignedLong(seqNumber) < sequenceSpace && distanceFromExpected(seqNumber) < windowSize) {
+                int slot = outOfOrderSlot(distanceFromExpected(seqNumber));
+                if (outOfOrderPackets[slot] == null) {
+                    outOfOrderPackets[slot] = packet;
+                    outOfOrderCount++;
+                }
+                sendAck(getPreviousSequenceNumber());
             }
             //Otherwise it's an old packet, so send the highest ACK so far
             else {
-                //Fill output packet
-                int packetSeqNum = -1;
-                int packetAckNum = getPreviousSequenceNumber();
-                String packetData = "";
-                int packetChecksum = packetSeqNum + packetAckNum;
-                outputPacket = new Packet(packetSeqNum, packetAckNum, packetChecksum, packetData);
+                sendAck(getPreviousSequenceNumber());
             }
-            udtSend(outputPacket);
         }
         //By design, corrupt packets are ignored and treated as lost
     }
+    
+    /**
+     * Called when the delayed ACK timer expires: acknowledge the packets delivered since the last ACK.
+     */
+    @Override
+    public void timerInterrupt() {
+        ackTimerRunning = false;
+        sendAck(getPreviousSequenceNumber());
+    }
 
 }
@@ -0,0 +1,67 @@
+package transport;
+
+/**
+ * TCP Reno style congestion control, counted in packets.
+ * Slow start doubles the window every round trip until it reaches the slow start threshold; after that the window grows
+ * by one packet per round trip (additive increase). A timeout halves the threshold and restarts slow start from one packet.
+ * The given number of duplicate ACKs in a row halves the window instead (multiplicative decrease) and enters fast recovery,
+ * where each further duplicate ACK lets one more packet out, until new data is acknowledged.
+ */
+public class RenoCongestionControl implements CongestionControl {
+
+    private static final double MINTHRESHOLD = 2;
+
+    private final int duplicateThreshold;   // duplicate ACKs in a row taken as a sign of loss
+
+    private double cwnd;                    // congestion window, in packets
+    private double ssthresh;                // slow start threshold, in packets
+    private boolean inRecovery;             // true between the duplicate ACK threshold and the next new ACK
+
+    public RenoCongestionControl(double initialWindow, double initialThreshold, int duplicateThreshold) {
+        this.cwnd = initialWindow;
+        this.ssthresh = initialThreshold;
+        this.duplicateThreshold = duplicateThreshold;
+        this.inRecovery = false;
+    }
+
+    @Override
+    public double getWindow() {
+        return cwnd;
+    }
+
+    @Override
+    public void onAck(long acknowledged) {
+        if (inRecovery) {
+            // deflate the window inflated by the duplicate ACKs
+            cwnd = ssthresh;
+            inRecovery = false;
+            return;
+        }
+
+        for (long i = 0; i < acknowledged; i++) {
+            if (cwnd < ssthresh) {
+                cwnd += 1;
+            } else {
+                cwnd += 1 / cwnd;
+            }
+        }
+    }
+
+    @Override
+    public void onDuplicateAck(int duplicates) {
+        if (duplicates == duplicateThreshold && !inRecovery) {
+            ssthresh = Math.max(cwnd / 2, MINTHRESHOLD);
+            cwnd = ssthresh + duplicateThreshold;
+            inRecovery = true;
+        } else if (inRecovery) {
+            cwnd += 1;
+        }
+    }
+
+    @Override
+    public void onTimeout() {
+        ssthresh = Math.max(cwnd / 2, MINTHRESHOLD);
+        cwnd = 1;
+        inRecovery = false;
+    }
+}
@@ -2,102 +2,242 @@ package transport;
 //Candidate Number: 184676
 
 public class Sender extends NetworkHost {    
-    //Values that won't change during execution, so declared as constant.
-    //-1 is used to mean null value as 0 is the min.
-    private final static int MINSEQUENCENUMBER = 0;
-    private final static int MAXSEQUENCENUMBER = 49;
+    //Default window size and number of sequence numbers, used unless transport.window or transport.sequencespace is set.
+    //Sequence numbers run from 0 to sequencespace - 1 and are held as unsigned ints, so the space can be as large as 2^32.
+    private final static int DEFAULTWINDOWSIZE = 8;
+    private final static long DEFAULTSEQUENCESPACE = 50;
+    private final static long MAXSEQUENCESPACE = 1L << 32;
     private final static int EXPECTEDRTT = 40;
-    private final static int WINDOWSIZE = 8;
+    //Duplicate ACKs in a row that trigger a fast retransmit, unless transport.dupackthreshold is set (0 turns it off).
+    private final static int DEFAULTDUPACKTHRESHOLD = 3;
+    //Message coalescing: by default a packet carries one message (transport.mtu = MAXDATASIZE).
+    //With a larger MTU a packet carries as many queued messages as fit, each framed as "length:data",
+    //and a packet that isn't full may be held back for up to transport.coalescedelay in case more messages arrive.
+    //Fragmentation: a message longer than the MTU (see transport.messagesize) is split over several packets,
+    //each fragment but the last framed as "length+data"; the receiver reassembles them.
+    private final static int DEFAULTMTU = MAXDATASIZE;
+    private final static double DEFAULTCOALESCEDELAY = 0;
+    private final static int FRAMEOVERHEAD = Integer.toString(MAXDATASIZE).length() + 1;
     
-    //Only need to keep track of the highest ACK as it is cumulative.
-    private int highestAck;
+    //Retransmission timeout estimation (Jacobson/Karels): the gains for the smoothed RTT and its variation,
+    //and the bounds the timeout is kept within. EXPECTEDRTT is the timeout used before the first RTT sample.
+    private final static double RTTGAIN = 0.125;
+    private final static double RTTVARGAIN = 0.25;
+    private final static double MINTIMEOUT = EXPECTEDRTT / 2;
+    private final static double MAXTIMEOUT = 8 * EXPECTEDRTT;
     
-    //Use an array to represent the buffer, use it circularly.
+    //Window size and sequence space of this run; fixed once init() has been called.
+    private int windowSize;
+    private long sequenceSpace;
+    
+    //The packets in the window, in a ring with one slot per window position.
+    //The packet with sequence number baseSequenceNumber is in slot baseSlot, the next one in the slot after, and so on.
     private Packet[] packetBuffer;
-    //The index of the first packet in the window.
+    private int baseSlot;
+    //The sequence number of the first packet in the window.
     private int baseSequenceNumber;
     //The sequence number given to the next packet that's created.
     private int nextSequenceNumber;
     
+    //How many packets from the start of the window have been sent since the window last went back (after a timeout).
+    //Equal to the number of packets in the window unless the congestion window stopped some being resent.
+    private int packetsSentInWindow;
+    
+    //The most characters of payload in a packet, whether messages are coalesced into packets, and for how long a packet may be held back.
+    private int mtu;
+    private boolean coalescing;
+    private double coalesceDelay;
+    //Set while the flush timer is sending the packets held back, so they go even if not quite full.
+    private boolean flushing;
+    //The message being fragmented, taken from the send queue but not all sent yet (null if none), and how much of it has been sent.
+    private String partialMessage;
+    private int partialOffset;
+    
+    //Limits the packets in flight further than the window when congestion control is on (transport.congestion).
+    private CongestionControl congestionControl;
+    //The number of ACKs in a row that acknowledged nothing new, and how many trigger a fast retransmit.
+    private int duplicateAcks;
+    private int duplicateAckThreshold;
+    //After a fast retransmit or timeout, how far past the start of the window nextSequenceNumber was then (the recovery point,
+    //as in NewReno), or 0 when not recovering. The packets resent may still be in flight too, and their copies make the
+    //receiver send more duplicate ACKs, so duplicate ACKs are ignored until the window has moved past this point.
+    private long recoveryPoint;
+    
+    //When each packet in the window was first sent, and whether it has been sent more than once (same slots as packetBuffer).
+    //Karn's rule: ACKs for retransmitted packets are not used as RTT samples, as it's unknown which copy they acknowledge.
+    private double[] sendTime;
+    private boolean[] retransmitted;
+    //Whether the receiver has reported each packet in the window in a SACK block (same slots as packetBuffer).
+    //Such packets are held by the receiver until the gap before them is filled, so they are never resent.
+    //highestSacked is how far past the start of the window the highest of them is, or -1 if none is marked.
+    private boolean[] sacked;
+    private long highestSacked;
+    
+    //Smoothed RTT and RTT variation (-1 until the first sample), the estimated retransmission timeout,
+    //and the factor it is multiplied by after consecutive timeouts (exponential backoff).
+    private double smoothedRtt;
+    private double rttVariation;
+    private double timeout;
+    private int backoff;
+    
     /**
-     * Takes a given sequence number and increments it, rolling over from MAX sequence number to MIN.
-     * @param num the sequence number to be incremented.
-     * @return the next sequence number.
+     * Adds to a sequence number, rolling over from the end of the sequence space to 0.
+     * @param num the sequence number.
+     * @param n how much to add.
+     * @return the sequence number n after num.
      */
-    private int incrementGivenSequenceNumber(int num) {
-        num += 1;
-        if (num > MAXSEQUENCENUMBER) {
-            num = MINSEQUENCENUMBER;
-        }
-        return num;
+    private int addToSequenceNumber(int num, long n) {
+        return (int) ((Integer.toUnsignedLong(num) + n) % sequenceSpace);
+    }
+    
+    /**
+     * How far a sequence number is past the start of the window, accounting for wrap around. O(1) whatever the window size.
+     * @param seqNum The sequence number.
+     * @return 0 for the base of the window, up to sequenceSpace - 1.
+     */
+    private long distanceFromBase(int seqNum) {
+        return Math.floorMod(Integer.toUnsignedLong(seqNum) - Integer.toUnsignedLong(baseSequenceNumber), sequenceSpace);
+    }
+    
+    /**
+     * The number of packets that have been sent and not yet acknowledged.
+     * @return the number of packets in the window.
+     */
+    private int getPacketsInWindow() {
+        return (int) distanceFromBase(nextSequenceNumber);
+    }
+    
+    /**
+     * Checks whether a sequence number belongs to a packet in the window, i.e. sent but not yet acknowledged.
+     * @param seqNum The sequence number to be checked.
+     * @return True if the sequence number is in the packet window, false otherwise
+     */
+    private boolean validateInPacketWindow(int seqNum) {
+        return Integer.toUnsignedLong(seqNum) < sequenceSpace && distanceFromBase(seqNum) < getPacketsInWindow();
+    }
+    
+    /**
+     * The number of packets that may be in flight: the window size, or the congestion window if that is smaller.
+     * @return The effective window size, at least 1.
+     */
+    private int getEffectiveWindowSize() {
+        return (int) Math.max(1, Math.min(windowSize, congestionControl.getWindow()));
     }
     
     /**
-     * Increments the class variable nextSequenceNumber, used after a packet is created, ensures two packets don't have the same number.
+     * Records the congestion window in the metrics (and the log) after the congestion controller may have changed it.
      */
-    private void incrementNextSequenceNumber() {
-        nextSequenceNumber += 1;
-        if (nextSequenceNumber > MAXSEQUENCENUMBER) {
-            nextSequenceNumber = MINSEQUENCENUMBER;
+    private void reportCongestionWindow() {
+        if (!(congestionControl instanceof NoCongestionControl)) {
+            getSimulator().getMetrics().congestionWindow(getSimulator().getTime(), congestionControl.getWindow());
+            if (getLog().isEnabled(LogLevel.DEBUG)) {
+                getLog().println("Sender: congestion window " + congestionControl.getWindow());
+            }
         }
     }
     
     /**
-     * Used to calculate the sequence number of the most recent packet added to the buffer.
-     * This is helpful in timerInterrupt when working out how many packets need to be resent.
-     * Values appropriately roll back from MIN sequence number to MAX.
-     * @return The value of the sequence number before nextSequenceNumber.
+     * Whether a new packet should be sent for the messages in the send queue (if the window allows).
+     * When coalescing with a delay, a packet is only sent once it would be full or its oldest message has waited long enough.
+     * @return True if there is a packet to send.
      */
-    private int getPreviousSequenceNumber() {
-        int previousSequenceNumber = nextSequenceNumber - 1;
-        if (previousSequenceNumber < MINSEQUENCENUMBER) {
-            previousSequenceNumber = MAXSEQUENCENUMBER;
+    private boolean isPacketReady() {
+        if (partialMessage != null) {
+            return true;
+        }
+        SendQueue queue = getSimulator().getSendQueue();
+        if (queue.isEmpty()) {
+            return false;
+        }
+        if (!coalescing || coalesceDelay <= 0 || flushing) {
+            return true;
         }
-        return previousSequenceNumber;
+        return queue.dataLength() + queue.size() * FRAMEOVERHEAD >= mtu
+                || getSimulator().getTime() - queue.oldestQueuedAt() >= coalesceDelay;
     }
     
     /**
-     * Using the class variable baseSequenceNumber, work out what the sequence number of the final packet in the window is.
-     * Ensures that the value is incremented the correct number of times and appropriately rolls over from MAX sequence number to MIN.
-     * @return The sequence number of the end of the window.
+     * Takes the data of the next packet from the send queue and sends it: one message, or when coalescing as many framed
+     * messages as fit in the MTU. A message too long for one packet is sent a fragment at a time, starting in the space left
+     * in the packet when coalescing; a message that would fit in a packet of its own is never split.
+     * Only called when isPacketReady().
      */
-    private int getEndOfWindowSequenceNumber(){
-        int outputNumber = baseSequenceNumber;
-        for (int i = 1; i <  WINDOWSIZE; i++) {
-            outputNumber += 1;
-            if (outputNumber > MAXSEQUENCENUMBER) {
-                outputNumber = MINSEQUENCENUMBER;
+    private void sendNextPacket() {
+        if (partialMessage == null && !coalescing && getSimulator().getSendQueue().peek().getData().length() <= mtu) {
+            sendNewPacket(nextQueuedMessage().getData(), false);
+            return;
+        }
+        StringBuilder data = new StringBuilder(mtu);
+        while (partialMessage != null || hasQueuedMessages()) {
+            String messageData;
+            if (partialMessage != null) {
+                messageData = partialMessage;
+            } else if (data.length() > 0 && !coalescing) {
+                break;
+            } else {
+                messageData = getSimulator().getSendQueue().peek().getData();
+                partialOffset = 0;
+            }
+            int remaining = messageData.length() - partialOffset;
+            int record = Integer.toString(remaining).length() + 1 + remaining;
+            if (data.length() + record <= mtu) {
+                //The rest of the message fits: its last (or only) record.
+                data.append(remaining).append(':').append(messageData, partialOffset, messageData.length());
+                if (partialMessage == null) {
+                    nextQueuedMessage();
+                }
+                partialMessage = null;
+                continue;
             }
+            if (partialMessage == null && record <= mtu) {
+                break;
+            }
+            int space = mtu - data.length();
+            int chunk = space - Integer.toString(space).length() - 1;
+            if (chunk <= 0) {
+                break;
+            }
+            if (partialMessage == null) {
+                partialMessage = nextQueuedMessage().getData();
+            }
+            data.append(chunk).append('+').append(messageData, partialOffset, partialOffset + chunk);
+            partialOffset += chunk;
+            break;
         }
-        return outputNumber;
+        sendNewPacket(data.toString(), true);
     }
     
     /**
-     * Checks whether a given sequence number is within the packet window, accounting for extreme cases around the MAX and MIN values.
-     * Used in various places, including the timerInterrupt and output.
-     * @param seqNum The sequence number to be checked.
-     * @return True if the sequence number is in the packet window, false otherwise
+     * Sends packets while the effective window allows: first packets of the window not resent since it went back,
+     * then new packets for messages waiting in the send queue.
+     * A partly filled packet held back for coalescing is sent by the flush timer.
      */
-    private boolean validateInPacketWindow(int seqNum) {
-        //Case 1: general case, sequence number between start and end of window.
-        //Case 2: Start of window close to MAX and end of window is close to MIN, due to wrap around.
-        //In this case, anything above start or below end of window would be within the window, so both these options are accounted for.
-        return (seqNum >= baseSequenceNumber && seqNum <= getEndOfWindowSequenceNumber()                                                                //eg base = 10, end = 18, current = 15
-                || (seqNum >= baseSequenceNumber && seqNum > getEndOfWindowSequenceNumber() && getEndOfWindowSequenceNumber() < baseSequenceNumber)     //eg base = 45, end = 2, current = 48
-                || (seqNum < baseSequenceNumber && seqNum <= getEndOfWindowSequenceNumber() && getEndOfWindowSequenceNumber() < baseSequenceNumber));   //eg base = 45, end = 2, current = 1
+    private void fillWindow() {
+        int effectiveWindowSize = getEffectiveWindowSize();
+        while (packetsSentInWindow < getPacketsInWindow() && packetsSentInWindow < effectiveWindowSize) {
+            int resendSlot = slot(packetsSentInWindow);
+            if (!sacked[resendSlot]) {
+                retransmitted[resendSlot] = true;
+                udtSend(packetBuffer[resendSlot]);
+            }
+            packetsSentInWindow++;
+        }
+        while (isPacketReady() && getPacketsInWindow() < effectiveWindowSize) {
+            sendNextPacket();
+        }
+        if (coalescing && coalesceDelay > 0 && hasQueuedMessages() && getPacketsInWindow() < effectiveWindowSize) {
+            double now = getSimulator().getTime();
+            startFlushTimer(Math.max(0, getSimulator().getSendQueue().oldestQueuedAt() + coalesceDelay - now));
+        }
     }
     
     /**
-     * Calculated the checksum of a given string by summing the ASCII values of each character.
-     * @param string The string used in the checksum.
-     * @return The integer sum.
+     * The ring slot holding the packet a given distance past the start of the window.
+     * @param distance How far past the base of the window, less than the window size.
+     * @return The index into packetBuffer, sendTime and retransmitted.
      */
-    private int checksumOfString (String string) {
-        int runningSum = 0;
-        for (char ch : string.toCharArray()) {
-            runningSum += (int) ch;
-        }
-        return runningSum;
+    private int slot(long distance) {
+        return (int) ((baseSlot + distance) % windowSize);
     }
     
     /**
@@ -106,8 +246,92 @@ public class Sender extends NetworkHost {
      * @return True if the checksum is correct, false otherwise.
      */
     private boolean validateChecksum (Packet packet) {
-        int calculatedChecksum = packet.getSeqnum() + packet.getAcknum() + checksumOfString(packet.getPayload());
-        return calculatedChecksum == packet.getChecksum();
+        return getPacketChecksum().isValid(packet);
+    }
+    
+    /**
+     * Creates a packet for some data with the next sequence number, puts it at the end of the window and sends it.
+     * The window must have room for it. Starting the timer is left to the caller.
+     * @param data The payload: a message, or framed records of messages and fragments.
+     * @param framed Whether the payload is framed.
+     */
+    private void sendNewPacket(String data, boolean framed) {
+        int ackNum = -1;
+        Packet outputPacket = new Packet(nextSequenceNumber, ackNum, 0, data);
+        outputPacket.setFramed(framed);
+        outputPacket.setChecksum(getPacketChecksum().compute(outputPacket));
+        
+        int newSlot = slot(getPacketsInWindow());
+        packetBuffer[newSlot] = outputPacket;
+        sendTime[newSlot] = getSimulator().getTime();
+        retransmitted[newSlot] = false;
+        sacked[newSlot] = false;
+        
+        nextSequenceNumber = addToSequenceNumber(nextSequenceNumber, 1);
+        packetsSentInWindow++;
+        udtSend(outputPacket);
+    }
+    
+    /**
+     * Marks the packets in the window that an ACK's SACK blocks report as received.
+     * Blocks that aren't wholly within the window (e.g. from an old ACK) are ignored.
+     * @param packet A valid ACK, after the window has been moved on for its cumulative acknowledgement.
+     * @return How far past the start of the window the highest packet marked so far is, or -1 if none is marked.
+     */
+    private long markSacked(Packet packet) {
+        if (!packet.hasSack()) {
+            return highestSacked;
+        }
+        int[] sack = packet.getSack();
+        for (int i = 0; i + 1 < sack.length; i += 2) {
+            if (validateInPacketWindow(sack[i]) && validateInPacketWindow(sack[i + 1])) {
+                long first = distanceFromBase(sack[i]);
+                long last = distanceFromBase(sack[i + 1]);
+                for (long distance = first; distance <= last; distance++) {
+                    sacked[slot(distance)] = true;
+                }
+                highestSacked = Math.max(highestSacked, last);
+            }
+        }
+        return highestSacked;
+    }
+    
+    /**
+     * Resends the packets of the window that haven't been selectively acknowledged, up to the highest one that has:
+     * these are the holes the receiver is waiting for. Packets after them may still be on their way, so are left alone.
+     * @param highestSacked How far past the start of the window the highest selectively acknowledged packet is.
+     */
+    private void retransmitHoles(long highestSacked) {
+        for (long distance = 0; distance < highestSacked && distance < packetsSentInWindow; distance++) {
+            int resendSlot = slot(distance);
+            if (!sacked[resendSlot]) {
+                retransmitted[resendSlot] = true;
+                udtSend(packetBuffer[resendSlot]);
+            }
+        }
+    }
+    
+    /**
+     * Updates the smoothed RTT, RTT variation and timeout from a new RTT sample.
+     * @param sample The measured round trip time of a packet that was only sent once.
+     */
+    private void updateTimeout(double sample) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = sample;
+            rttVariation = sample / 2;
+        } else {
+            rttVariation = (1 - RTTVARGAIN) * rttVariation + RTTVARGAIN * Math.abs(smoothedRtt - sample);
+            smoothedRtt = (1 - RTTGAIN) * smoothedRtt + RTTGAIN * sample;
+        }
+        timeout = Math.min(MAXTIMEOUT, Math.max(MINTIMEOUT, smoothedRtt + 4 * rttVariation));
+    }
+    
+    /**
+     * The value the timer should be started with: the estimated timeout, backed off after consecutive timeouts.
+     * @return The current retransmission timeout.
+     */
+    private double getTimeout() {
+        return Math.min(MAXTIMEOUT, timeout * backoff);
     }
     
     //Constructor.
@@ -115,53 +339,80 @@ public class Sender extends NetworkHost {
         super(entityName);
     }
     
-    //Sets up the non-constant class variables.
+    //Constructor for a host of a given simulator, so several simulations can run side by side.
+    public Sender(int entityName, NetworkSimulator simulator) {
+        super(entityName, simulator);
+    }
+    
+    //Sets up the non-constant class variables, reading the window size and sequence space from the simulator's configuration.
     @Override
     public void init() {
-        packetBuffer = new Packet[50];
-        highestAck = -1;
-        baseSequenceNumber = MINSEQUENCENUMBER;
+        windowSize = getSimulator().getConfiguration().getInt("window", DEFAULTWINDOWSIZE);
+        sequenceSpace = getSimulator().getConfiguration().getLong("sequencespace", DEFAULTSEQUENCESPACE);
+        if (sequenceSpace < 2 || sequenceSpace > MAXSEQUENCESPACE) {
+            throw new IllegalArgumentException("Sequence space must be between 2 and 2^32, not " + sequenceSpace);
+        }
+        if (windowSize < 1 || windowSize >= sequenceSpace) {
+            throw new IllegalArgumentException("Window size must be between 1 and the sequence space - 1, not " + windowSize);
+        }
+        
+        packetBuffer = new Packet[windowSize];
+        sendTime = new double[windowSize];
+        retransmitted = new boolean[windowSize];
+        sacked = new boolean[windowSize];
+        packetsSentInWindow = 0;
+        congestionControl = CongestionControl.forConfiguration(getSimulator().getConfiguration());
+        duplicateAcks = 0;
+        recoveryPoint = 0;
+        duplicateAckThreshold = getSimulator().getConfiguration().getInt("dupackthreshold", DEFAULTDUPACKTHRESHOLD);
+        mtu = getSimulator().getConfiguration().getInt("mtu", DEFAULTMTU);
+        if (mtu < MAXDATASIZE || mtu > Packet.MAXPAYLOADSIZE) {
+            throw new IllegalArgumentException("MTU must be from " + MAXDATASIZE + " to " + Packet.MAXPAYLOADSIZE + ", not " + mtu);
+        }
+        coalescing = mtu > MAXDATASIZE;
+        coalesceDelay = getSimulator().getConfiguration().getDouble("coalescedelay", DEFAULTCOALESCEDELAY);
+        flushing = false;
+        partialMessage = null;
+        partialOffset = 0;
+        getSimulator().getMetrics().setCongestionWindowTraced(getSimulator().getConfiguration().getBoolean("cwndtrace", false));
+        reportCongestionWindow();
+        smoothedRtt = -1;
+        rttVariation = 0;
+        timeout = EXPECTEDRTT;
+        backoff = 1;
+        baseSlot = 0;
+        highestSacked = -1;
+        baseSequenceNumber = 0;
         nextSequenceNumber = baseSequenceNumber;
     }
     
     /**
      * Called by the application layer, used to send data across the network.
-     * Creates a packet for the message, with the appropriate data, sequence number, and checksum.
-     * If the packet is within the packet window, it is buffered and immediately sent, 
-     * If it's outside the packet window it is just buffered for sending later.
-     * If there is a buffer overflow when trying to add the packet, the application quits.
+     * If the packet window (limited by the congestion window) has room, a packet is created for the message,
+     * with the appropriate data, sequence number, and checksum, and immediately sent. Otherwise the message waits in the send queue until the window moves on;
+     * a message only gets a sequence number when it enters the window, so waiting messages can't run out of them.
+     * If the send queue is full the application gets back pressure (see transport.backpressure).
      * @param message The message to be sent across the network.
      */
     @Override
     public void output(Message message) {        
-        //Generate Packet.
-        String data = message.getData();
-        int ackNum = -1;
-        int checksum = nextSequenceNumber + ackNum + checksumOfString(data);
-        Packet outputPacket = new Packet(nextSequenceNumber, ackNum, checksum, data);
-        
-        //Add to buffer.
-        packetBuffer[nextSequenceNumber] = outputPacket;
-        
-        //Check whether it needs to be sent now.
-        //If this packet is the base packet, start the timer.
-        if (validateInPacketWindow(nextSequenceNumber)) {
-            udtSend(outputPacket);
-            if (nextSequenceNumber == baseSequenceNumber) {
-                startTimer(EXPECTEDRTT);
+        if (coalescing || message.getData().length() > mtu) {
+            //The message goes through the send queue, so it can share a packet with the messages around it or be fragmented.
+            boolean idle = getPacketsInWindow() == 0;
+            queueMessage(message);
+            fillWindow();
+            if (idle && getPacketsInWindow() > 0) {
+                startTimer(getTimeout());
             }
+        } else if (!hasQueuedMessages() && partialMessage == null && packetsSentInWindow == getPacketsInWindow() && getPacketsInWindow() < getEffectiveWindowSize()) {
+            sendNewPacket(message.getData(), false);
+            //If this packet is the base packet, start the timer.
+            if (getPacketsInWindow() == 1) {
+                startTimer(getTimeout());
+            }
+        } else {
+            queueMessage(message);
         }
-        
-        
-        incrementNextSequenceNumber();
-        
-        //Checks if an overflow occured, happens when nextSequenceNumber loops all the way back around to equal baseSequenceNumber.
-        if(nextSequenceNumber == baseSequenceNumber) {
-            //Quit the appliaction.
-            System.out.println("Buffer capacity exceeded!");
-            System.exit(0);
-        }
-        
     }
     
     
@@ -172,44 +423,100 @@ public class Sender extends NetworkHost {
     @Override
     public void input(Packet packet) {
         //Check the packet is valid.
-        //Get ACK number - if in window, update current highestACK.
-        //Move the window along to the packet after the highestACK 
+        //Get ACK number - if in window, the ACK is cumulative so everything up to it has arrived.
+        //Move the window along to the packet after the ACK, and send waiting messages that now fit.
+        //An ACK for the packet before the window acknowledges nothing new, so it is a duplicate (the receiver got a packet out of order).
+        //Enough duplicates in a row mean the base packet was lost: fast retransmit, rather than waiting for the timer.
+        //The receiver has thrown away everything after the lost packet, so the window goes back to its start, as on a timeout,
+        //unless the ACK has SACK blocks: then the receiver kept those packets, and only the holes before them are resent.
+        //Duplicates that arrive while recovering from a fast retransmit or timeout are not counted.
         if (validateChecksum(packet)) {
             int ackNum = packet.getAcknum();
-            if (validateInPacketWindow(ackNum)) {
-                highestAck = ackNum;
-                baseSequenceNumber = incrementGivenSequenceNumber(highestAck);
+            if (ackNum == addToSequenceNumber(baseSequenceNumber, sequenceSpace - 1) && getPacketsInWindow() > 0) {
+                long highestSacked = markSacked(packet);
+                if (recoveryPoint == 0) {
+                    duplicateAcks++;
+                    congestionControl.onDuplicateAck(duplicateAcks);
+                    reportCongestionWindow();
+                    if (duplicateAcks == duplicateAckThreshold) {
+                        if (getLog().isEnabled(LogLevel.EVENT)) {
+                            getLog().println("Sender: fast retransmit after " + duplicateAcks + " duplicate ACKs");
+                        }
+                        recoveryPoint = getPacketsInWindow();
+                        if (highestSacked > 0) {
+                            retransmitHoles(highestSacked);
+                        } else {
+                            packetsSentInWindow = 0;
+                        }
+                        stopTimer();
+                        startTimer(getTimeout());
+                    }
+                }
+                fillWindow();
+            }
+            else if (validateInPacketWindow(ackNum)) {
+                long acknowledged = distanceFromBase(ackNum) + 1;
+                int ackSlot = slot(acknowledged - 1);
+                //Take an RTT sample from the acknowledged packet, unless it was retransmitted (Karn's rule).
+                if (!retransmitted[ackSlot]) {
+                    updateTimeout(getSimulator().getTime() - sendTime[ackSlot]);
+                }
+                //New data has been acknowledged, so the path is working again and the backoff can be cleared.
+                backoff = 1;
+                duplicateAcks = 0;
+                congestionControl.onAck(acknowledged);
+                reportCongestionWindow();
+                
+                for (long i = 0; i < acknowledged; i++) {
+                    packetBuffer[slot(i)] = null;
+                }
+                baseSlot = slot(acknowledged);
+                baseSequenceNumber = addToSequenceNumber(ackNum, 1);
+                packetsSentInWindow = (int) Math.max(0, packetsSentInWindow - acknowledged);
+                highestSacked = Math.max(-1, highestSacked - acknowledged);
+                recoveryPoint = Math.max(0, recoveryPoint - acknowledged);
+                markSacked(packet);
+                
+                fillWindow();
                 stopTimer();
                 if (baseSequenceNumber != nextSequenceNumber) {
-                    startTimer(EXPECTEDRTT);
+                    startTimer(getTimeout());
                 }
             }
         } 
     }
     
     /**
-     * Called by the timer when it expires. Used to resend all the necessary packets.
+     * Called by the timer when it expires. The window goes back to its start and its packets are resent,
+     * as many as the (possibly reduced) congestion window allows; the rest are resent as ACKs arrive.
+     * Packets the receiver has selectively acknowledged are skipped.
+     * The timeout is doubled (exponential backoff) until an ACK for new data arrives.
      */
     @Override
     public void timerInterrupt() {
-        //End of window needs to be the the next NOT NEEDED sequence number due to the way the while loop works.
-        //So the sequence number after end of window, or the next sequence number.
-        int endOfWindow;
-        if (validateInPacketWindow(getPreviousSequenceNumber())) {
-            //If the window isn't full, only send the packets that are in it.
-            endOfWindow = nextSequenceNumber;
-            
-        }
-        else {
-            //Otherwise, the window is full so we can send the full window again.
-            endOfWindow = incrementGivenSequenceNumber(getEndOfWindowSequenceNumber());
-        }
-        //Until at the end of window, send packets, then start the timer again.
-        int currentSequenceNumber = baseSequenceNumber;
-        while (currentSequenceNumber != endOfWindow) {
-            udtSend(packetBuffer[currentSequenceNumber]);
-            currentSequenceNumber = incrementGivenSequenceNumber(currentSequenceNumber);
-        }
-        startTimer(EXPECTEDRTT);
+        congestionControl.onTimeout();
+        reportCongestionWindow();
+        duplicateAcks = 0;
+        recoveryPoint = getPacketsInWindow();
+        packetsSentInWindow = 0;
+        fillWindow();
+        if (getTimeout() < MAXTIMEOUT) {
+            backoff *= 2;
+        }
+        startTimer(getTimeout());
+    }
+    
+    /**
+     * Called by the flush timer when a packet held back for coalescing has waited long enough: send what the window allows.
+     */
+    @Override
+    public void flushTimerInterrupt() {
+        boolean idle = getPacketsInWindow() == 0;
+        flushing = true;
+        fillWindow();
+        flushing = false;
+        if (idle && getPacketsInWindow() > 0) {
+            startTimer(getTimeout());
+        }
     }
 }
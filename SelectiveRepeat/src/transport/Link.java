@@ -0,0 +1,149 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * The link in one direction between the hosts, used instead of the default random delay when transport.bandwidth is set.
+ * The link sends transport.bandwidth bytes per time unit, so a packet takes its wire format length / bandwidth to be
+ * serialised onto it, and then transport.propagation time units to reach the other side. Packets that arrive while the link
+ * is busy wait in a FIFO queue of transport.linkqueue packets (including the one being sent); when it's full they are dropped
+ * (drop-tail), or with transport.linkqueuepolicy=red they are dropped early with a probability that grows with the average
+ * queue length (Random Early Detection, thresholds transport.redmin and transport.redmax in packets,
+ * maximum probability transport.redmaxp and averaging weight transport.redweight).
+ * Like the other channel settings these can be given for one direction only (see Configuration.forDirection): with just
+ * transport.bandwidth.atob set, data packets go over a link and ACKs still get the random delay, and the other way round.
+ *
+ * The queue only holds the times at which its packets finish being sent, in a ring allocated once; packets leave it
+ * when the simulated time passes those times, so the link needs no events of its own.
+ */
+public class Link {
+
+    // The direction of a link, also its index in the Metrics
+    public static final int TOB = 0;
+    public static final int TOA = 1;
+
+    private final int direction;
+    private final double bandwidth;     // bytes per time unit
+    private final double propagation;   // time units from the end of serialisation to arrival
+    private final boolean red;
+    private final double redMin;
+    private final double redMax;
+    private final double redMaxP;
+    private final double redWeight;
+    private final Random rand;          // for RED's drop decisions
+    private final Metrics metrics;
+
+    private final double[] finishTimes; // when each queued packet finishes being sent, oldest in slot head
+    private int head;
+    private int size;
+    private double busyUntil;           // when the last queued packet finishes being sent
+    private double averageSize;         // RED's moving average of the queue length
+    private int sinceDrop;              // RED: packets queued since the last early drop
+
+    public Link(int direction, double bandwidth, double propagation, int capacity, boolean red,
+            double redMin, double redMax, double redMaxP, double redWeight, Random rand, Metrics metrics) {
+        if (bandwidth <= 0) {
+            throw new IllegalArgumentException("Link bandwidth must be more than 0, not " + bandwidth);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Link queue capacity must be at least 1, not " + capacity);
+        }
+        if (red && !(redMin < redMax)) {
+            throw new IllegalArgumentException("RED minimum threshold must be below the maximum, not " + redMin + " and " + redMax);
+        }
+        this.direction = direction;
+        this.bandwidth = bandwidth;
+        this.propagation = propagation;
+        this.red = red;
+        this.redMin = redMin;
+        this.redMax = redMax;
+        this.redMaxP = redMaxP;
+        this.redWeight = redWeight;
+        this.rand = rand;
+        this.metrics = metrics;
+        finishTimes = new double[capacity];
+    }
+
+    /**
+     * Creates the link for one direction selected by the configuration.
+     * @param config the simulator's configuration
+     * @param direction TOB or TOA
+     * @param rand the simulator's random number generator
+     * @param metrics where queue occupancy and drops are reported
+     * @return the link, or null if the channel has no link model (transport.bandwidth not set)
+     */
+    public static Link forConfiguration(Configuration config, int direction, Random rand, Metrics metrics) {
+        double bandwidth = config.getDouble("bandwidth", 0);
+        if (bandwidth == 0) {
+            return null;
+        }
+        int capacity = config.getInt("linkqueue", 64);
+        String policy = config.getString("linkqueuepolicy", "droptail");
+        if (!policy.equals("droptail") && !policy.equals("red")) {
+            throw new IllegalArgumentException("Unknown link queue policy (droptail or red): " + policy);
+        }
+        return new Link(direction, bandwidth, config.getDouble("propagation", 10), capacity, policy.equals("red"),
+                config.getDouble("redmin", capacity / 4.0), config.getDouble("redmax", capacity * 3 / 4.0),
+                config.getDouble("redmaxp", 0.1), config.getDouble("redweight", 0.002), rand, metrics);
+    }
+
+    /**
+     * Offers a packet to the link.
+     * @param time the current simulated time
+     * @param length the packet's length on the wire, in bytes
+     * @return the time the packet arrives at the other side, or -1 if the queue dropped it
+     */
+    public double send(double time, int length) {
+        advance(time);
+        if (size == finishTimes.length || (red && dropEarly())) {
+            metrics.linkPacketDropped(direction);
+            return -1;
+        }
+        double finish = Math.max(time, busyUntil) + length / bandwidth;
+        finishTimes[(head + size) % finishTimes.length] = finish;
+        size++;
+        busyUntil = finish;
+        metrics.linkQueueDepth(direction, time, size);
+        return finish + propagation;
+    }
+
+    // RED: updates the average queue length with the current one, and decides whether to drop the arriving packet
+    private boolean dropEarly() {
+        averageSize = (1 - redWeight) * averageSize + redWeight * size;
+        if (averageSize < redMin) {
+            sinceDrop = 0;
+            return false;
+        }
+        if (averageSize >= redMax) {
+            sinceDrop = 0;
+            return true;
+        }
+        double p = redMaxP * (averageSize - redMin) / (redMax - redMin);
+        // spread the drops out evenly rather than in clusters
+        double pa = sinceDrop * p >= 1 ? 1 : p / (1 - sinceDrop * p);
+        if (rand.nextDouble() < pa) {
+            sinceDrop = 0;
+            return true;
+        }
+        sinceDrop++;
+        return false;
+    }
+
+    // Removes the packets that have finished being sent by the given time, recording when the queue got shorter
+    public void advance(double time) {
+        while (size > 0 && finishTimes[head] <= time) {
+            size--;
+            metrics.linkQueueDepth(direction, finishTimes[head], size);
+            head = (head + 1) % finishTimes.length;
+        }
+    }
+
+    // The bytes the link can carry in a given time; with twice the propagation delay, the bandwidth-delay product
+    public double bytesIn(double time) {
+        return bandwidth * time;
+    }
+
+    public double getPropagation() {
+        return propagation;
+    }
+}
@@ -0,0 +1,503 @@
+package transport;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class NetworkSimulator {
+
+    // This constant controls the size of the messages generated by default (see MessageSizes) and of a packet payload by default (see transport.mtu)
+    public static final int MAXDATASIZE = 20;
+
+    // Default capacity of the send queue (transport.queue)
+    public static final int DEFAULTQUEUECAPACITY = 1000;
+
+    // With transport.network=udp, how long (in milliseconds) to wait for datagrams still in flight once nothing is scheduled (transport.udplinger)
+    public static final double DEFAULTUDPLINGER = 200;
+
+    // These constants represent our sender (A) and receiver (B)
+    public static final int A = 12345;
+    public static final int B = 67890;
+
+    // The simulator supports only a single sender host (A)
+    private Sender sender;
+    
+    // The simulator supports only a single receiver host (B)
+    private Receiver receiver;
+
+    private int maxMessages;            // the maximum number of messages the sender application is allowed to send
+    
+    private double lossProb;            // the probability that a packet will be "lost"
+    private double corruptProb;         // the probability that a packet will be "corrupted"
+    
+    private double avgMessageDelay;     // the average message delay between messages sent by the application at the sender side
+        
+    private Random rand;                // A random number generator
+    private long seed;                  // the seed it was created with
+    private MessageSizes messageSizes;  // how long the application's messages are (transport.messagesize)
+
+    private int nMsgSim;                // number of simulated messages
+    private double time;                // the simulated time
+    
+    private EventList eventList;        // The list of events that the simulator needs to process
+
+    private SimulatorLog log;           // where the simulator and the hosts write their trace
+
+    private Metrics metrics;            // how well the protocol is doing in this run
+
+    private Configuration configuration = Configuration.fromSystemProperties();    // protocol and channel settings
+
+    private PacketChecksum packetChecksum;  // how the hosts checksum packets (transport.checksum), chosen on first use
+
+    private SendQueue sendQueue;        // messages from the application the sender can't send yet
+    private String backpressure;        // what the application does when the send queue is full: block, reject or delay
+    private double retryDelay;          // with backpressure delay, how long until a message is offered again
+    private Message blockedMessage;     // with backpressure block, the message the application is blocked on (null if it isn't)
+    private boolean applicationWaiting; // whether the application is blocked or backing off, so it doesn't generate new messages
+
+    private LoopbackUdpNetwork network; // with transport.network=udp, the sockets packets travel over and the wall clock (null when simulated)
+    private double udpLinger;           // how long to wait for datagrams still in flight at the end
+
+    private LossModel lossToB;          // what the channel does to the packets to each host (transport.lossmodel, transport.corruptmodel)
+    private LossModel lossToA;
+    private CorruptionModel corruptionToB;
+    private CorruptionModel corruptionToA;
+
+    private DeliveryModel deliveryToB;  // whether the channel keeps packets in order, or reorders and duplicates them (transport.fifo etc.)
+    private DeliveryModel deliveryToA;
+
+    private Link linkToB;               // with transport.bandwidth, the links packets are queued and sent on (null otherwise)
+    private Link linkToA;
+
+    private RealTimePacer pacer;        // with transport.realtime, holds each event back until its time on the wall clock (null if not paced)
+
+    // A shared instance for single-run programs such as Assignment, created on first use through getInstance().
+    // Each simulator owns its own hosts, event list, random number generator and log, and its hosts only ever talk to it,
+    // so several simulators can be created with the constructor and run at the same time on different threads.
+    private static NetworkSimulator instance = null;
+
+    public NetworkSimulator() {
+    }
+
+    // get the shared NetworkSimulator, instantiating it on the first call
+    public static synchronized NetworkSimulator getInstance() {
+        if (instance == null) {
+            instance = new NetworkSimulator();
+        }
+        return instance;
+    }
+
+    // initialise the NetworkSimulator, logging everything to the standard output
+    public void initSimulator(int maxMsgs, double loss, double corrupt, double delay, long seed) {
+        initSimulator(maxMsgs, loss, corrupt, delay, seed, new SimulatorLog(LogLevel.DEBUG));
+    }
+
+    // initialise the NetworkSimulator with the given log (closed when the simulation ends)
+    public void initSimulator(int maxMsgs, double loss, double corrupt, double delay, long seed, SimulatorLog simulatorLog) {
+        maxMessages = maxMsgs;
+
+        log = simulatorLog;
+        
+        lossProb = loss;
+        corruptProb = corrupt;
+        
+        avgMessageDelay = delay;
+
+        rand = new Random(seed);        // instantiate Random number generator with provided seed
+        this.seed = seed;
+
+        nMsgSim = 0;                    // initialise number of simulated messages to 0
+        time = 0.0;                     // initialise simulation time to 0
+
+        eventList = new EventList();    // instantiate event list (initially empty)
+
+        metrics = new Metrics();        // all counters start at 0
+        
+        sender = new Sender(A, this);   // initialise sender entity (the respective class)
+
+        receiver = new Receiver(B, this); // initialise receiver entity (the respective class)
+
+        buildChannel();
+    }
+
+    // Create what the channel does to the packets in each direction from the configuration, so udtSend works from now on
+    private void buildChannel() {
+        Configuration toB = configuration.forDirection(B);
+        Configuration toA = configuration.forDirection(A);
+        lossToB = LossModel.forConfiguration(toB, lossProb);
+        lossToA = LossModel.forConfiguration(toA, lossProb);
+        corruptionToB = CorruptionModel.forConfiguration(toB, corruptProb);
+        corruptionToA = CorruptionModel.forConfiguration(toA, corruptProb);
+        deliveryToB = DeliveryModel.forConfiguration(toB);
+        deliveryToA = DeliveryModel.forConfiguration(toA);
+        linkToB = Link.forConfiguration(toB, Link.TOB, rand, metrics);
+        linkToA = Link.forConfiguration(toA, Link.TOA, rand, metrics);
+    }
+
+    // The main simulator loop - everything happens here!
+    // When the method exits, the simulator is over and the Java program stops
+    public void runSimulator() {
+        Event next;                     // the next Event to process
+
+        sendQueue = new SendQueue(configuration.getInt("queue", DEFAULTQUEUECAPACITY), metrics);
+        backpressure = configuration.getString("backpressure", "block");
+        if (!backpressure.equals("block") && !backpressure.equals("reject") && !backpressure.equals("delay")) {
+            throw new IllegalArgumentException("Unknown back pressure (block, reject or delay): " + backpressure);
+        }
+        retryDelay = configuration.getDouble("retrydelay", avgMessageDelay);
+        messageSizes = MessageSizes.forConfiguration(configuration, seed);
+        blockedMessage = null;
+        applicationWaiting = false;
+
+        // By default the channel is simulated, with time in arbitrary units; over UDP time is wall-clock milliseconds
+        String networkType = configuration.getString("network", "simulated");
+        switch (networkType) {
+            case "simulated":
+                network = null;
+                break;
+            case "udp":
+                network = new LoopbackUdpNetwork(metrics);
+                udpLinger = configuration.getDouble("udplinger", DEFAULTUDPLINGER);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown network (simulated or udp): " + networkType);
+        }
+        if (network != null && (deliveryToB.isDisordering() || deliveryToA.isDisordering())) {
+            throw new IllegalArgumentException("A run over UDP uses the real path, so it can't also reorder or duplicate packets (transport.reorder, transport.duplicate)");
+        }
+        if (linkToB != null || linkToA != null) {
+            if (network != null) {
+                throw new IllegalArgumentException("A run over UDP uses the real link, so it can't also have a link model (transport.bandwidth)");
+            }
+            // the data packets' link, or the ACKs' if only that direction has one
+            Link link = linkToB != null ? linkToB : linkToA;
+            metrics.linkStarted(link.bytesIn(2 * link.getPropagation()));
+        }
+        pacer = RealTimePacer.forConfiguration(configuration, metrics);
+        if (pacer != null && network != null) {
+            throw new IllegalArgumentException("A run over UDP is always in real time, so it can't also be paced (transport.realtime)");
+        }
+
+        sender.init();                  // Students: You will override this method (defined in the NetworkHost) to initialise your Sender.
+        receiver.init();                // Students: You will override this method (defined in the NetworkHost) to initialise your Receiver.
+
+        // Start the whole thing off by scheduling a new message from the simulated application
+        // Calling this method will add a new FROMAPP Event. 
+        // When this Event is executed, your code will be invoked so that the message can be sent to the Receiver
+        generateNextArrival();
+
+        if (network != null) {
+            runOverNetwork();
+        } else {
+            if (pacer != null) {
+                pacer.start();
+            }
+
+            // Begin the main simulation loop
+            while (true) {
+                // Get the next (with respect to the scheduled time) event in the list
+                next = eventList.removeNext();
+
+                if (next == null) {
+                    // we run out of events - exit - end of simulation
+                    break;
+                }
+
+                // When paced, wait for the event's time to come round on the wall clock
+                if (pacer != null) {
+                    pacer.waitUntil(next.getTime());
+                }
+
+                // Advance the simulator's time to be the scheduled time of the next event
+                time = next.getTime();
+                processEvent(next);
+            }
+
+            if (pacer != null) {
+                metrics.realTimeFinished(pacer.elapsed());
+            }
+        }
+
+        if (linkToB != null) {
+            linkToB.advance(time);
+        }
+        if (linkToA != null) {
+            linkToA.advance(time);
+        }
+        metrics.finished(time);
+
+        if (log.isEnabled(LogLevel.SUMMARY)) {
+            log.println();
+            log.println("Simulation finished at time " + time + " after " + nMsgSim + " messages");
+            log.println(metrics.summary());
+        }
+        log.close();
+    }
+
+    // Performs the appropriate action for an event, which is due at the current time
+    private void processEvent(Event next) {
+        if (log.isEnabled(LogLevel.EVENT)) {
+            log.println();
+            log.println("EVENT time: " + time + "  type: " + next.getType() + "  entity: " + next.getEntity());
+        }
+
+        metrics.eventProcessed();
+
+        // Perform the appropriate action based on the event 
+        switch (next.getType()) {
+            case TIMERINTERRUPT:
+                if (next.getEntity() == A) {
+                    metrics.timeout();  // only the sender's retransmission timer; B's is a delayed ACK
+                    sender.timerInterrupt();
+                } else if (next.getEntity() == B) {
+                    receiver.timerInterrupt();
+                } else {
+                    if (log.isEnabled(LogLevel.SUMMARY)) {
+                        log.println("INTERNAL PANIC: Timeout for invalid entity");
+                    }
+                }
+                break;
+            case FLUSHTIMER:
+                if (next.getEntity() == A) {
+                    sender.flushTimerInterrupt();
+                } else {
+                    receiver.flushTimerInterrupt();
+                }
+                break;
+            case FROMNETWORK:
+                switch (next.getEntity()) {
+                    case A:
+                        sender.input(next.getPacket());
+                        break;
+                    case B:
+                        receiver.input(next.getPacket());
+                        break;
+                    default:
+                        if (log.isEnabled(LogLevel.SUMMARY)) {
+                            log.println("INTERNAL PANIC: Packet has " + "arrived for unknown entity");
+                        }
+                        break;
+                }
+                break;
+            case FROMAPP:
+                if (next.getMessage() != null) {
+                    // A message offered again after the send queue was full; the application goes on if it's taken this time
+                    applicationWaiting = false;
+                    sender.output(next.getMessage());
+                    if (nMsgSim < maxMessages && !applicationWaiting) {
+                        generateNextArrival();
+                    }
+                    break;
+                }
+
+                // The message is MAXDATASIZE characters long unless another size is configured (see MessageSizes)
+                char[] nextMessage = new char[messageSizes.next()];
+
+                // Now, let's generate the contents of this message
+                char j = (char) (((nMsgSim - 1) % 26) + 97);
+                Arrays.fill(nextMessage, j);
+
+                // Let the student handle the new message
+                metrics.messageOffered();
+                sender.output(new Message(new String(nextMessage)));
+            
+                // If a message has arrived from sending process, we need to schedule the arrival of the next message
+                // If we've reached the maximum message count, exit the main loop
+                // An application waiting for room in the send queue schedules its next message once its message is taken
+                if (nMsgSim < maxMessages && !applicationWaiting) {
+                    generateNextArrival();
+                } else {
+                    // do not schedule more FROMAPP events from the application layer if we reached the maximum number of messages
+                }
+            
+                break;
+            default:
+                if (log.isEnabled(LogLevel.SUMMARY)) {
+                    log.println("INTERNAL PANIC: Unknown event type");
+                }
+        }
+    }
+
+    // The main loop with transport.network=udp: each event runs when the wall clock reaches its time (or as soon after as it can),
+    // and packets are handed to the hosts as they arrive from the sockets in between.
+    // It ends when no event is left and every datagram has arrived, or none has arrived for transport.udplinger milliseconds.
+    private void runOverNetwork() {
+        network.open();
+        try {
+            while (true) {
+                Event next = eventList.peekNext();
+                time = network.now();
+                if (next != null && next.getTime() <= time) {
+                    eventList.removeNext();
+                    processEvent(next);
+                } else if (next != null) {
+                    network.receive(next.getTime(), this::packetArrived);
+                } else if (network.isIdle() || !network.receive(time + udpLinger, this::packetArrived)) {
+                    break;
+                }
+            }
+        } finally {
+            network.close();
+        }
+    }
+
+    // A packet has arrived from the network for a host
+    private void packetArrived(Packet packet, int entity) {
+        time = network.now();
+        processEvent(new Event(time, EventType.FROMNETWORK, entity, packet));
+    }
+
+    // The send queue was full when the sender tried to queue a message: apply back pressure to the application.
+    // Returns false if the message is rejected, so the sender should drop it.
+    boolean applicationBackpressure(Message message) {
+        switch (backpressure) {
+            case "block":
+                // the application waits for room before it can go on, so no more messages are generated until then
+                blockedMessage = message;
+                applicationWaiting = true;
+                metrics.applicationBlocked();
+                if (log.isEnabled(LogLevel.EVENT)) {
+                    log.println("applicationBackpressure: send queue full, application blocked");
+                }
+                return true;
+            case "delay":
+                // the application backs off and offers the message again later, generating no new messages meanwhile
+                eventList.add(new Event(time + retryDelay, EventType.FROMAPP, A, message));
+                applicationWaiting = true;
+                metrics.messageRetried();
+                if (log.isEnabled(LogLevel.EVENT)) {
+                    log.println("applicationBackpressure: send queue full, message offered again at " + (time + retryDelay));
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // A message has left the send queue: an application blocked on it can queue its message and go on
+    void sendQueueSpace() {
+        if (blockedMessage != null) {
+            sendQueue.offer(blockedMessage, time);
+            blockedMessage = null;
+            applicationWaiting = false;
+            if (log.isEnabled(LogLevel.EVENT)) {
+                log.println("sendQueueSpace: application unblocked");
+            }
+            if (nMsgSim < maxMessages) {
+                generateNextArrival();
+            }
+        }
+    }
+
+    // Generate the next arrival and add it to the event list
+    private void generateNextArrival() {
+        if (log.isEnabled(LogLevel.DEBUG)) {
+            log.println("generateNextArrival(): called");
+        }
+
+        // arrival time 'x' is uniform on [0, 2 * avgMessageDelay] having mean of avgMessageDelay.
+        // rand is used to provide the required uniformness
+        double x = 0.5 * avgMessageDelay + avgMessageDelay * rand.nextDouble();
+
+        // Instantiate a new FROMAPP Event
+        Event next = new Event(time + x, EventType.FROMAPP, A);
+
+        // Add the newly instantiated Event to the EventList
+        eventList.add(next);
+        
+        // Increment the message counter
+        nMsgSim++;
+        
+        if (log.isEnabled(LogLevel.DEBUG)) {
+            log.println("generateNextArrival(): time is " + time);
+            log.println("generateNextArrival(): future time for " + "event " + next.getType() + " at entity " + next.getEntity() + " will be " + next.getTime());
+        }
+
+    }
+
+    public double getLossProb() {
+        return lossProb;
+    }
+
+    public SendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    public double getCorruptProb() {
+        return corruptProb;
+    }
+
+    public double getAvgMessageDelay() {
+        return avgMessageDelay;
+    }
+
+    // The real network packets are sent over, or null if the channel is simulated
+    public LoopbackUdpNetwork getNetwork() {
+        return network;
+    }
+
+    // How the channel loses packets for a host
+    public LossModel getLossModel(int destination) {
+        return destination == B ? lossToB : lossToA;
+    }
+
+    // How the channel corrupts packets for a host
+    public CorruptionModel getCorruptionModel(int destination) {
+        return destination == B ? corruptionToB : corruptionToA;
+    }
+
+    // How the channel delivers packets for a host: in order or not, and with duplicates or not
+    public DeliveryModel getDeliveryModel(int destination) {
+        return destination == B ? deliveryToB : deliveryToA;
+    }
+
+    // The link packets for a host are sent on, or null if the channel has no link model
+    public Link getLink(int destination) {
+        return destination == B ? linkToB : linkToA;
+    }
+
+    public EventList getEventList() {
+        return eventList;
+    }
+
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
+    // Replace the protocol and channel settings; must be called before runSimulator(), when the hosts read them
+    public void setConfiguration(Configuration config) {
+        configuration = config;
+        packetChecksum = null;
+        if (metrics != null) {
+            buildChannel();             // already initialised, so rebuild the channel for the new settings
+        }
+    }
+
+    // The checksum algorithm of this run, as set by transport.checksum
+    public PacketChecksum getPacketChecksum() {
+        if (packetChecksum == null) {
+            packetChecksum = PacketChecksum.forConfiguration(configuration);
+        }
+        return packetChecksum;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public SimulatorLog getLog() {
+        return log;
+    }
+
+    public Random getRand() {
+        return rand;
+    }
+
+    public int getnSim() {
+        return nMsgSim;
+    }
+    
+    public double getTime() {
+        return time;
+    }
+
+}
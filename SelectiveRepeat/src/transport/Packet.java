@@ -0,0 +1,237 @@
+package transport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Represents a Packet sent in the (simulated) network.
+ * The network consists only of Sender A and Receiver B
+ *
+ * The payload is held as bytes, one per character (ISO-8859-1, which covers the 8-bit characters messages are made of),
+ * and only turned into a String when getPayload() is first called. The packet has a binary wire format for transports
+ * that need one: a fixed HEADERSIZE-byte header (seq, ack, checksum, payload length, flags, all big-endian),
+ * then the payload, then, if the FLAGSACK flag is set, the number of SACK entries and the entries.
+ */
+public class Packet {
+
+    public static final int HEADERSIZE = 16;        // seq (4) + ack (4) + checksum (4) + payload length (2) + flags (2)
+    public static final int MAXPAYLOADSIZE = 0xFFFF; // the payload length is an unsigned 16-bit field
+    public static final int FLAGSACK = 1;            // the packet carries SACK blocks after the payload
+    public static final int FLAGFRAMED = 2;          // the payload is a sequence of framed records rather than one message
+
+    private int seqnum;     // sequence number
+    private int acknum;     // acknowledgment number
+    private int checksum;   // checksum
+    private byte[] payload; // packet payload, one byte per character; never modified once set, so copies can share it
+    private String payloadString; // the payload as a String, made when first asked for (null until then)
+    private int[] sack;     // selective acknowledgement blocks of an ACK: pairs of first and last sequence number received, or null
+    private boolean framed; // whether the payload holds framed records: whole messages or fragments of them, each "length:data" or,
+                            // for a fragment that isn't the last of its message, "length+data"
+
+    private boolean sent;   // set by udtSend once this packet has been handed to the network (not copied)
+
+    public Packet(Packet p) {
+        seqnum = p.getSeqnum();
+        acknum = p.getAcknum();
+        checksum = p.getChecksum();
+        payload = p.payload;
+        payloadString = p.payloadString;
+        sack = p.sack == null ? null : p.sack.clone();
+        framed = p.framed;
+    }
+
+    Packet (int seq, int ack, int check) {
+        this(seq, ack, check, "");
+    }
+
+    Packet (int seq, int ack, int check, String pld) {
+        seqnum = seq;
+        acknum = ack;
+        checksum = check;
+        setPayload(pld);
+    }
+
+    Packet (int seq, int ack, int check, String pld, int[] sck) {
+        this(seq, ack, check, pld);
+        sack = sck;
+    }
+
+    public int getSeqnum() {
+        return seqnum;
+    }
+
+    public void setSeqnum(int seqnum) {
+        this.seqnum = seqnum;
+    }
+
+    public int getAcknum() {
+        return acknum;
+    }
+
+    public void setAcknum(int acknum) {
+        this.acknum = acknum;
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+
+    public void setChecksum(int checksum) {
+        this.checksum = checksum;
+    }
+
+    public String getPayload() {
+        if (payloadString == null) {
+            payloadString = new String(payload, StandardCharsets.ISO_8859_1);
+        }
+        return payloadString;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload.getBytes(StandardCharsets.ISO_8859_1);
+        this.payloadString = payload;
+    }
+
+    // The payload bytes themselves, not a copy: they must not be modified
+    public byte[] getPayloadBytes() {
+        return payload;
+    }
+
+    // Sets the payload bytes, which are not copied and must not be modified afterwards
+    public void setPayloadBytes(byte[] payload) {
+        this.payload = payload;
+        this.payloadString = null;
+    }
+
+    public int getPayloadLength() {
+        return payload.length;
+    }
+
+    // The SACK blocks, {first1, last1, first2, last2, ...}, or null if the packet has none
+    public int[] getSack() {
+        return sack;
+    }
+
+    public void setSack(int[] sack) {
+        this.sack = sack;
+    }
+
+    // Whether the packet carries at least one SACK block
+    public boolean hasSack() {
+        return sack != null && sack.length > 0;
+    }
+
+    public boolean isFramed() {
+        return framed;
+    }
+
+    public void setFramed(boolean framed) {
+        this.framed = framed;
+    }
+
+    boolean isSent() {
+        return sent;
+    }
+
+    void setSent(boolean sent) {
+        this.sent = sent;
+    }
+
+    // The number of bytes encode() writes
+    public int getEncodedLength() {
+        int length = HEADERSIZE + payload.length;
+        if (hasSack()) {
+            length += 2 + 4 * sack.length;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the packet in its wire format at the buffer's position, which is moved past it
+     * @param buffer where the packet is written, with at least getEncodedLength() bytes remaining
+     * @return the buffer
+     */
+    public ByteBuffer encode(ByteBuffer buffer) {
+        if (payload.length > MAXPAYLOADSIZE) {
+            throw new IllegalStateException("Payload too long for the wire format: " + payload.length + " bytes");
+        }
+        buffer.putInt(seqnum);
+        buffer.putInt(acknum);
+        buffer.putInt(checksum);
+        buffer.putShort((short) payload.length);
+        buffer.putShort((short) ((hasSack() ? FLAGSACK : 0) | (framed ? FLAGFRAMED : 0)));
+        buffer.put(payload);
+        if (hasSack()) {
+            buffer.putShort((short) sack.length);
+            for (int entry : sack) {
+                buffer.putInt(entry);
+            }
+        }
+        return buffer;
+    }
+
+    // The packet in its wire format, in a new array
+    public byte[] toBytes() {
+        byte[] bytes = new byte[getEncodedLength()];
+        encode(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * Reads a packet in its wire format from the buffer's position, which is moved past it
+     * @param buffer holding the packet
+     * @return the packet
+     * @throws IllegalArgumentException if the buffer doesn't hold a whole packet
+     */
+    public static Packet decode(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADERSIZE) {
+            throw new IllegalArgumentException("Packet shorter than its header: " + buffer.remaining() + " bytes");
+        }
+        int seq = buffer.getInt();
+        int ack = buffer.getInt();
+        int check = buffer.getInt();
+        int length = buffer.getShort() & 0xFFFF;
+        int flags = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < length) {
+            throw new IllegalArgumentException("Packet payload truncated: " + buffer.remaining() + " of " + length + " bytes");
+        }
+
+        Packet packet = new Packet(seq, ack, check);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        packet.setPayloadBytes(bytes);
+        packet.setFramed((flags & FLAGFRAMED) != 0);
+
+        if ((flags & FLAGSACK) != 0) {
+            if (buffer.remaining() < 2) {
+                throw new IllegalArgumentException("Packet SACK blocks truncated");
+            }
+            int entries = buffer.getShort() & 0xFFFF;
+            if (buffer.remaining() < 4 * entries) {
+                throw new IllegalArgumentException("Packet SACK blocks truncated: " + buffer.remaining() + " of " + 4 * entries + " bytes");
+            }
+            int[] blocks = new int[entries];
+            for (int i = 0; i < entries; i++) {
+                blocks[i] = buffer.getInt();
+            }
+            packet.setSack(blocks);
+        }
+        return packet;
+    }
+
+    // Reads a packet from an array holding exactly its wire format
+    public static Packet fromBytes(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public String toString() {
+        String s = "seqnum: " + seqnum + "  acknum: " + acknum + "  checksum: " + checksum + "  payload: " + getPayload();
+        if (hasSack()) {
+            s += "  sack: " + Arrays.toString(sack);
+        }
+        return s;
+    }
+
+}
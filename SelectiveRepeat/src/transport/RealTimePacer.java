@@ -0,0 +1,73 @@
+package transport;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a simulation against the wall clock, selected with transport.realtime=<speed-up>: simulated time t is reached
+ * t / speed-up milliseconds of wall-clock time after the run starts (so at speed-up 1 a time unit is a millisecond).
+ * Events are still executed at their simulated times, so a paced run does exactly what an unpaced one does, only slower.
+ * Each wait parks the thread until shortly before the event is due, then spins, which is accurate to a few microseconds.
+ * When the simulation can't keep up, events start late; the lateness of every event is reported to the Metrics, and an
+ * event more than transport.realtimetolerance milliseconds late (default 1) counts as late.
+ */
+public class RealTimePacer {
+
+    private static final long SPINNANOS = 50_000;   // the last part of a wait is spun rather than parked
+
+    private final double speedup;
+    private final double tolerance;
+    private final Metrics metrics;
+
+    private long startNanos;                        // System.nanoTime() at simulated time 0
+
+    public RealTimePacer(double speedup, double tolerance, Metrics metrics) {
+        if (speedup <= 0) {
+            throw new IllegalArgumentException("Real-time speed-up must be more than 0, not " + speedup);
+        }
+        this.speedup = speedup;
+        this.tolerance = tolerance;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates the pacer selected by the configuration.
+     * @param config the simulator's configuration
+     * @param metrics where the lateness of events is reported
+     * @return the pacer, or null if the run isn't paced
+     */
+    public static RealTimePacer forConfiguration(Configuration config, Metrics metrics) {
+        double speedup = config.getDouble("realtime", 0);
+        if (speedup == 0) {
+            return null;
+        }
+        return new RealTimePacer(speedup, config.getDouble("realtimetolerance", 1), metrics);
+    }
+
+    // Starts the wall clock at simulated time 0
+    public void start() {
+        startNanos = System.nanoTime();
+        metrics.realTimeStarted(speedup, tolerance);
+    }
+
+    /**
+     * Waits until the wall clock reaches a simulated time, or returns at once if it's already past it.
+     * @param time the simulated time the next event is due at
+     */
+    public void waitUntil(double time) {
+        long due = startNanos + (long) (time / speedup * 1e6);
+        long remaining = due - System.nanoTime();
+        while (remaining > SPINNANOS) {
+            LockSupport.parkNanos(remaining - SPINNANOS);
+            remaining = due - System.nanoTime();
+        }
+        while (remaining > 0) {
+            remaining = due - System.nanoTime();
+        }
+        metrics.eventPaced(-remaining / 1e6);
+    }
+
+    // The wall-clock time since start(), in milliseconds
+    public double elapsed() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+}
@@ -0,0 +1,110 @@
+package transport;
+//Candidate Number: 184676
+
+public class Receiver extends NetworkHost {
+    //Values that won't change during execution, so declared as constant.
+    //These must match the Sender's.
+    private final static int MINSEQUENCENUMBER = 0;
+    private final static int MAXSEQUENCENUMBER = 49;
+    private final static int SEQUENCESPACE = MAXSEQUENCENUMBER - MINSEQUENCENUMBER + 1;
+    private final static int WINDOWSIZE = 8;
+    
+    //The sequence number of the next packet to be delivered, i.e. the start of the receive window.
+    private int expectedSequenceNumber;
+    
+    //Packets that arrived out of order and are waiting for the gap before them to be filled, indexed by sequence number.
+    private String[] reorderBuffer;
+    private boolean[] buffered;
+    
+    //Increase the expectedSequenceNumber, deals with wraparound, used after a packet is delivered.
+    private void incrementExpectedSequenceNumber() {
+        expectedSequenceNumber += 1;
+        if (expectedSequenceNumber > MAXSEQUENCENUMBER) {
+            expectedSequenceNumber = MINSEQUENCENUMBER;
+        }
+    }
+    
+    //How far a sequence number is past the start of the receive window, accounting for wrap around.
+    private int distanceFromExpected(int seqNum) {
+        return ((seqNum - expectedSequenceNumber) % SEQUENCESPACE + SEQUENCESPACE) % SEQUENCESPACE;
+    }
+    
+    //Whether a number read from a packet is in the sequence space; with a weak checksum a corrupted one may not be.
+    private boolean validateSequenceNumber(int seqNum) {
+        return Integer.toUnsignedLong(seqNum) < SEQUENCESPACE;
+    }
+    
+    /**
+     * Calculates the checksum of a received packet and compares it to the packet's stated checksum.
+     * @param packet the packet to be checked.
+     * @return false is the packet is definitely corrupted, true otherwise.
+     */
+    private boolean validateChecksum (Packet p) {
+        return getPacketChecksum().isValid(p);
+    }
+    
+    //Sends an ACK for exactly the given sequence number.
+    private void sendAck(int seqNum) {
+        int packetSeqNum = -1;
+        int packetAckNum = seqNum;
+        String packetData = "";
+        Packet ack = new Packet(packetSeqNum, packetAckNum, 0, packetData);
+        ack.setChecksum(getPacketChecksum().compute(ack));
+        udtSend(ack);
+    }
+    
+    //Constructor.
+    public Receiver(int entityName) {
+        super(entityName);
+    }
+    
+    //Constructor for a host of a given simulator, so several simulations can run side by side.
+    public Receiver(int entityName, NetworkSimulator simulator) {
+        super(entityName, simulator);
+    }
+    
+    //Initialise all non-constant class variables.
+    @Override
+    public void init() {
+        expectedSequenceNumber = MINSEQUENCENUMBER;
+        reorderBuffer = new String[SEQUENCESPACE];
+        buffered = new boolean[SEQUENCESPACE];
+    }
+    
+    /**
+     * Trigger when a packet is received from the sender (i.e as a result of udtSend()).
+     * Packets inside the receive window are acknowledged and buffered, and delivered in order once any gap before them is filled.
+     * Packets from the previous window are acknowledged again, as their ACK may have been lost.
+     * @param packet The received packet, possibly corrupt.
+     */
+    @Override
+    public void input(Packet packet) {
+        //By design, corrupt packets are ignored and treated as lost, as are those with a sequence number out of range
+        if (!validateChecksum(packet) || !validateSequenceNumber(packet.getSeqnum())) {
+            return;
+        }
+        
+        int seqNumber = packet.getSeqnum();
+        int distance = distanceFromExpected(seqNumber);
+        
+        if (distance < WINDOWSIZE) {
+            sendAck(seqNumber);
+            if (!buffered[seqNumber]) {
+                reorderBuffer[seqNumber] = packet.getPayload();
+                buffered[seqNumber] = true;
+            }
+            //Deliver everything that is now in order.
+            while (buffered[expectedSequenceNumber]) {
+                deliverData(reorderBuffer[expectedSequenceNumber]);
+                reorderBuffer[expectedSequenceNumber] = null;
+                buffered[expectedSequenceNumber] = false;
+                incrementExpectedSequenceNumber();
+            }
+        }
+        //An old packet the sender is still retransmitting, so its ACK was lost
+        else if (distance >= SEQUENCESPACE - WINDOWSIZE) {
+            sendAck(seqNumber);
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+package transport;
+//Candidate Number: 184676
+
+public class Sender extends NetworkHost {    
+    //Values that won't change during execution, so declared as constant.
+    //The sequence space (50 numbers) must be at least twice the window size for selective repeat to tell new packets from old ones.
+    private final static int MINSEQUENCENUMBER = 0;
+    private final static int MAXSEQUENCENUMBER = 49;
+    private final static int SEQUENCESPACE = MAXSEQUENCENUMBER - MINSEQUENCENUMBER + 1;
+    private final static int EXPECTEDRTT = 40;
+    private final static int WINDOWSIZE = 8;
+    
+    //Retransmission timeout estimation (Jacobson/Karels), as in the GoBackN sender.
+    //Every packet is acknowledged individually, so every packet sent only once gives an RTT sample.
+    private final static double RTTGAIN = 0.125;
+    private final static double RTTVARGAIN = 0.25;
+    private final static double MINTIMEOUT = EXPECTEDRTT / 2;
+    private final static double MAXTIMEOUT = 8 * EXPECTEDRTT;
+    
+    //Use arrays to represent the buffer, indexed by sequence number and used circularly.
+    private Packet[] packetBuffer;
+    //Whether each buffered packet has been acknowledged.
+    private boolean[] acknowledged;
+    //When each buffered packet was first sent (-1 if not yet sent), and whether it has been sent more than once.
+    private double[] sendTime;
+    private boolean[] retransmitted;
+    //When each packet that is in flight should be retransmitted if it hasn't been acknowledged.
+    //The NetworkHost only has one timer, so it is always set to go off at the earliest of these.
+    private double[] deadline;
+    private boolean timerRunning;
+    
+    //The sequence number of the oldest unacknowledged packet, i.e. the start of the window.
+    private int baseSequenceNumber;
+    //The sequence number given to the next packet that's created.
+    private int nextSequenceNumber;
+    
+    //Smoothed RTT and RTT variation (-1 until the first sample), the estimated retransmission timeout,
+    //and the factor it is multiplied by after consecutive timeouts (exponential backoff).
+    private double smoothedRtt;
+    private double rttVariation;
+    private double timeout;
+    private int backoff;
+    
+    /**
+     * Takes a given sequence number and increments it, rolling over from MAX sequence number to MIN.
+     * @param num the sequence number to be incremented.
+     * @return the next sequence number.
+     */
+    private int incrementGivenSequenceNumber(int num) {
+        num += 1;
+        if (num > MAXSEQUENCENUMBER) {
+            num = MINSEQUENCENUMBER;
+        }
+        return num;
+    }
+    
+    /**
+     * How far a sequence number is past the start of the window, accounting for wrap around.
+     * @param seqNum The sequence number.
+     * @return 0 for the base of the window, up to SEQUENCESPACE - 1.
+     */
+    private int distanceFromBase(int seqNum) {
+        return ((seqNum - baseSequenceNumber) % SEQUENCESPACE + SEQUENCESPACE) % SEQUENCESPACE;
+    }
+    
+    /**
+     * Checks whether a sequence number belongs to a packet that has been sent and is still in the window.
+     * @param seqNum The sequence number to be checked.
+     * @return True if the packet is in flight or acknowledged but still inside the window, false otherwise.
+     */
+    private boolean isOutstanding(int seqNum) {
+        return distanceFromBase(seqNum) < distanceFromBase(nextSequenceNumber) && distanceFromBase(seqNum) < WINDOWSIZE;
+    }
+    
+    //Whether a number read from a packet is in the sequence space; with a weak checksum a corrupted one may not be.
+    private boolean validateSequenceNumber(int seqNum) {
+        return Integer.toUnsignedLong(seqNum) < SEQUENCESPACE;
+    }
+    
+    /**
+     * Ensures the checksum given by a packet is correct by recalculating it.
+     * @param packet The packet to be checked.
+     * @return True if the checksum is correct, false otherwise.
+     */
+    private boolean validateChecksum (Packet packet) {
+        return getPacketChecksum().isValid(packet);
+    }
+    
+    /**
+     * Sends a buffered packet and sets when it should be retransmitted,
+     * recording when it was first sent or marking it as retransmitted.
+     * @param seqNum The sequence number of the buffered packet.
+     */
+    private void sendBufferedPacket(int seqNum) {
+        double now = getSimulator().getTime();
+        if (sendTime[seqNum] < 0) {
+            sendTime[seqNum] = now;
+        } else {
+            retransmitted[seqNum] = true;
+        }
+        deadline[seqNum] = now + getTimeout();
+        udtSend(packetBuffer[seqNum]);
+    }
+    
+    /**
+     * Sets the timer to go off at the earliest retransmission deadline of the unacknowledged packets in flight.
+     * If there are none, the timer is left stopped.
+     */
+    private void restartTimer() {
+        if (timerRunning) {
+            stopTimer();
+            timerRunning = false;
+        }
+        
+        double earliest = Double.MAX_VALUE;
+        for (int seqNum = baseSequenceNumber; isOutstanding(seqNum); seqNum = incrementGivenSequenceNumber(seqNum)) {
+            if (!acknowledged[seqNum] && sendTime[seqNum] >= 0 && deadline[seqNum] < earliest) {
+                earliest = deadline[seqNum];
+            }
+        }
+        
+        if (earliest != Double.MAX_VALUE) {
+            startTimer(Math.max(0, earliest - getSimulator().getTime()));
+            timerRunning = true;
+        }
+    }
+    
+    /**
+     * Updates the smoothed RTT, RTT variation and timeout from a new RTT sample.
+     * @param sample The measured round trip time of a packet that was only sent once.
+     */
+    private void updateTimeout(double sample) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = sample;
+            rttVariation = sample / 2;
+        } else {
+            rttVariation = (1 - RTTVARGAIN) * rttVariation + RTTVARGAIN * Math.abs(smoothedRtt - sample);
+            smoothedRtt = (1 - RTTGAIN) * smoothedRtt + RTTGAIN * sample;
+        }
+        timeout = Math.min(MAXTIMEOUT, Math.max(MINTIMEOUT, smoothedRtt + 4 * rttVariation));
+    }
+    
+    /**
+     * The value a retransmission deadline is set with: the estimated timeout, backed off after consecutive timeouts.
+     * @return The current retransmission timeout.
+     */
+    private double getTimeout() {
+        return Math.min(MAXTIMEOUT, timeout * backoff);
+    }
+    
+    //Constructor.
+    public Sender(int entityName) {
+        super(entityName);
+    }
+    
+    //Constructor for a host of a given simulator, so several simulations can run side by side.
+    public Sender(int entityName, NetworkSimulator simulator) {
+        super(entityName, simulator);
+    }
+    
+    //Sets up the non-constant class variables.
+    @Override
+    public void init() {
+        packetBuffer = new Packet[SEQUENCESPACE];
+        acknowledged = new boolean[SEQUENCESPACE];
+        sendTime = new double[SEQUENCESPACE];
+        retransmitted = new boolean[SEQUENCESPACE];
+        deadline = new double[SEQUENCESPACE];
+        timerRunning = false;
+        smoothedRtt = -1;
+        rttVariation = 0;
+        timeout = EXPECTEDRTT;
+        backoff = 1;
+        baseSequenceNumber = MINSEQUENCENUMBER;
+        nextSequenceNumber = baseSequenceNumber;
+    }
+    
+    /**
+     * Called by the application layer, used to send data across the network.
+     * If the packet window has room, a packet is created for the message, with the appropriate data, sequence number, and checksum,
+     * and is buffered and immediately sent. Otherwise the message waits in the send queue until the window moves on far enough;
+     * if the queue is full the application gets back pressure (see transport.backpressure).
+     * @param message The message to be sent across the network.
+     */
+    @Override
+    public void output(Message message) {        
+        if (!hasQueuedMessages() && distanceFromBase(nextSequenceNumber) < WINDOWSIZE) {
+            sendNewPacket(message);
+            if (!timerRunning) {
+                restartTimer();
+            }
+        } else {
+            queueMessage(message);
+        }
+    }
+    
+    /**
+     * Creates a packet for a message with the next sequence number, buffers it and sends it.
+     * The window must have room for it. Setting the timer is left to the caller.
+     * @param message The message to be sent.
+     */
+    private void sendNewPacket(Message message) {
+        //Generate Packet.
+        String data = message.getData();
+        int ackNum = -1;
+        Packet outputPacket = new Packet(nextSequenceNumber, ackNum, 0, data);
+        outputPacket.setChecksum(getPacketChecksum().compute(outputPacket));
+        
+        //Add to buffer.
+        packetBuffer[nextSequenceNumber] = outputPacket;
+        acknowledged[nextSequenceNumber] = false;
+        sendTime[nextSequenceNumber] = -1;
+        retransmitted[nextSequenceNumber] = false;
+        
+        int seqNum = nextSequenceNumber;
+        incrementNextSequenceNumber();
+        sendBufferedPacket(seqNum);
+    }
+    
+    //Increments the class variable nextSequenceNumber, used after a packet is created.
+    private void incrementNextSequenceNumber() {
+        nextSequenceNumber = incrementGivenSequenceNumber(nextSequenceNumber);
+    }
+    
+    /**
+     * This method will be called whenever a packet sent from the receiver (i.e. as a result of a udtSend()) arrives at the sender.
+     * Each ACK acknowledges a single packet. Once the base packet is acknowledged the window moves on
+     * past every consecutive acknowledged packet, and packets are sent for queued messages that now fit in the window.
+     * @param packet The packet sent from the receiver, possibly corrupted.
+     */
+    @Override
+    public void input(Packet packet) {
+        //An ACK number outside the sequence space can only come from corruption the checksum missed.
+        if (!validateChecksum(packet) || !validateSequenceNumber(packet.getAcknum())) {
+            return;
+        }
+        
+        int ackNum = packet.getAcknum();
+        if (!isOutstanding(ackNum) || acknowledged[ackNum]) {
+            //ACK for a packet outside the window or a duplicate, nothing to do.
+            return;
+        }
+        
+        acknowledged[ackNum] = true;
+        //Take an RTT sample unless the packet was retransmitted (Karn's rule).
+        if (!retransmitted[ackNum]) {
+            updateTimeout(getSimulator().getTime() - sendTime[ackNum]);
+        }
+        backoff = 1;
+        
+        //Move the window past the acknowledged packets at its start.
+        while (baseSequenceNumber != nextSequenceNumber && acknowledged[baseSequenceNumber]) {
+            baseSequenceNumber = incrementGivenSequenceNumber(baseSequenceNumber);
+        }
+        
+        //Send the queued messages that now fit in the window.
+        while (hasQueuedMessages() && distanceFromBase(nextSequenceNumber) < WINDOWSIZE) {
+            sendNewPacket(nextQueuedMessage());
+        }
+        
+        restartTimer();
+    }
+    
+    /**
+     * Called by the timer when it expires. Resends only the packets whose retransmission deadline has passed,
+     * doubling the timeout (exponential backoff) until an ACK arrives.
+     */
+    @Override
+    public void timerInterrupt() {
+        timerRunning = false;
+        double now = getSimulator().getTime();
+        
+        if (getTimeout() < MAXTIMEOUT) {
+            backoff *= 2;
+        }
+        
+        for (int seqNum = baseSequenceNumber; isOutstanding(seqNum); seqNum = incrementGivenSequenceNumber(seqNum)) {
+            if (!acknowledged[seqNum] && sendTime[seqNum] >= 0 && deadline[seqNum] <= now) {
+                sendBufferedPacket(seqNum);
+            }
+        }
+        
+        restartTimer();
+    }
+}
@@ -0,0 +1,193 @@
+package transport;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The log written by the simulator and the network hosts.
+ * Callers check the level before building a message, e.g. {@code if (log.isEnabled(LogLevel.EVENT)) log.println(...)},
+ * so nothing is concatenated when a level is switched off.
+ * Lines are collected in a large in-memory buffer which is handed to a background thread to be written out,
+ * so the simulation does not wait for console or file I/O.
+ */
+public class SimulatorLog {
+
+    // the size (in chars) at which the buffer is handed over to the writer thread
+    private static final int CHUNKSIZE = 1 << 16;
+
+    // empty chunk used to tell the writer thread to stop
+    private static final String END = new String();
+
+    private final LogLevel level;
+    private final Writer target;
+    private final boolean closeTarget;      // false for stdout, which we flush but never close
+
+    private StringBuilder buffer;
+    private BlockingQueue<String> chunks;
+    private Thread writerThread;
+    private volatile IOException failure;
+
+    /**
+     * Creates a log that writes to the standard output
+     * @param level the most detailed level that is written
+     */
+    public SimulatorLog(LogLevel level) {
+        this(level, new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Creates a log that writes to a file, replacing its contents
+     * @param level the most detailed level that is written
+     * @param fileName the file to write to
+     * @throws IOException if the file cannot be opened
+     */
+    public SimulatorLog(LogLevel level, String fileName) throws IOException {
+        this(level, new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8), true);
+    }
+
+    private SimulatorLog(LogLevel level, Writer target, boolean closeTarget) {
+        this.level = level;
+        this.target = new BufferedWriter(target, CHUNKSIZE);
+        this.closeTarget = closeTarget;
+
+        if (level != LogLevel.OFF) {
+            buffer = new StringBuilder(2 * CHUNKSIZE);
+            chunks = new ArrayBlockingQueue<>(16);
+            writerThread = new Thread(this::writeChunks, "simulator-log");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * A log that discards everything
+     * @return a log at level OFF
+     */
+    public static SimulatorLog off() {
+        return new SimulatorLog(LogLevel.OFF, new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Creates a log from the system properties transport.log (off, summary, event or debug; default debug)
+     * and transport.logfile (the file to write to; default the standard output)
+     * @return the configured log
+     * @throws IOException if the log file cannot be opened
+     */
+    public static SimulatorLog fromSystemProperties() throws IOException {
+        LogLevel level = LogLevel.valueOf(System.getProperty("transport.log", "debug").toUpperCase());
+        String fileName = System.getProperty("transport.logfile");
+
+        if (fileName == null) {
+            return new SimulatorLog(level);
+        }
+        return new SimulatorLog(level, fileName);
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * @param messageLevel the level of the message about to be logged
+     * @return true if a message at this level would be written
+     */
+    public boolean isEnabled(LogLevel messageLevel) {
+        return messageLevel != LogLevel.OFF && messageLevel.ordinal() <= level.ordinal();
+    }
+
+    // Callers are expected to have checked isEnabled() first; this is not synchronized as a simulation runs on one thread
+    public void print(String text) {
+        if (buffer == null) {
+            return;
+        }
+        buffer.append(text);
+        if (buffer.length() >= CHUNKSIZE) {
+            handOver();
+        }
+    }
+
+    public void println(String line) {
+        print(line);
+        print(System.lineSeparator());
+    }
+
+    public void println() {
+        print(System.lineSeparator());
+    }
+
+    /**
+     * Writes out everything logged so far and stops the writer thread. Nothing is logged after this.
+     */
+    public void close() {
+        if (buffer == null) {
+            return;
+        }
+        handOver();
+        buffer = null;
+        put(END);
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void handOver() {
+        if (buffer.length() > 0) {
+            put(buffer.toString());
+            buffer.setLength(0);
+        }
+    }
+
+    private void put(String chunk) {
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs on the writer thread
+    private void writeChunks() {
+        try {
+            String chunk = chunks.take();
+            while (chunk != END) {
+                target.write(chunk);
+                if (chunks.isEmpty()) {
+                    target.flush();
+                }
+                chunk = chunks.take();
+            }
+            if (closeTarget) {
+                target.close();
+            } else {
+                target.flush();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+            // keep draining so the simulation is never blocked by a failed log
+            String chunk = null;
+            while (chunk != END) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
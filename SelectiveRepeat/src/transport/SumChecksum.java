@@ -0,0 +1,34 @@
+package transport;
+
+/**
+ * The original checksum: the sequence number plus the acknowledgement number plus the value of every payload character
+ * (and every SACK entry). Cheap, but blind to reordered bytes and to changes that cancel out.
+ */
+public class SumChecksum implements PacketChecksum {
+
+    public static final SumChecksum INSTANCE = new SumChecksum();
+
+    @Override
+    public int compute(int seqnum, int acknum, byte[] payload, int[] sack) {
+        int sum = seqnum + acknum;
+        for (byte b : payload) {
+            sum += b & 0xFF;
+        }
+        if (sack != null) {
+            for (int entry : sack) {
+                sum += entry;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public int updateSeqnum(int checksum, int oldSeqnum, int newSeqnum) {
+        return checksum - oldSeqnum + newSeqnum;
+    }
+
+    @Override
+    public int updateAcknum(int checksum, int oldAcknum, int newAcknum) {
+        return checksum - oldAcknum + newAcknum;
+    }
+}
@@ -0,0 +1,265 @@
+package transport;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Micro and end-to-end benchmarks for the simulator core and the protocol in this project.
+ * Every benchmark is run for a number of warm-up iterations (to let the JIT compile it) and then for a number of
+ * measured iterations; the mean and standard deviation of operations per second over the measured iterations are printed.
+ * Results of each operation are folded into a sink so the JIT cannot remove the work.
+ *
+ * Run with "ant bench". Arguments (-Dbench.args="...") are substrings; only benchmarks whose name contains one of them run.
+ */
+public class SimulatorBenchmark {
+
+    private static final int WARMUPS = 5;
+    private static final int ITERATIONS = 5;
+
+    private static final int[] QUEUESIZES = {16, 1024, 65536};
+    private static final double[] LOSSRATES = {0.0, 0.1, 0.2, 0.3};
+    private static final String[] CHECKSUMS = {"sum", "internet", "crc32c"};
+
+    // consumes results so that benchmarked code is not optimised away
+    private static volatile long sink;
+
+    // A benchmark body: performs some operations and returns how many it did
+    private interface Body {
+        long run();
+    }
+
+    private static final class Benchmark {
+        final String name;
+        final Body body;
+
+        Benchmark(String name, Body body) {
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    public static void main(String[] argv) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        for (int size : QUEUESIZES) {
+            benchmarks.add(new Benchmark("EventList.add+removeNext size=" + size, () -> addRemoveNext(size)));
+            benchmarks.add(new Benchmark("EventList.removeTimer size=" + size, () -> removeTimer(size)));
+            benchmarks.add(new Benchmark("EventList.cancel size=" + size, () -> cancelTimer(size)));
+        }
+        benchmarks.add(new Benchmark("NetworkHost.udtSend clean", () -> udtSend(0.0, 0.0)));
+        benchmarks.add(new Benchmark("NetworkHost.udtSend loss=0.2 corrupt=0.2", () -> udtSend(0.2, 0.2)));
+        benchmarks.add(new Benchmark("Sender.checksum", () -> checksum(true)));
+        benchmarks.add(new Benchmark("Receiver.checksum", () -> checksum(false)));
+        benchmarks.add(new Benchmark("Packet.encode+decode", SimulatorBenchmark::encodeDecode));
+        for (String algorithm : CHECKSUMS) {
+            PacketChecksum checksum = PacketChecksum.forConfiguration(new Configuration().set("checksum", algorithm));
+            benchmarks.add(new Benchmark("PacketChecksum." + algorithm + " bytes", () -> checksumBytes(checksum)));
+            benchmarks.add(new Benchmark("PacketChecksum." + algorithm + " update", () -> checksumUpdate(checksum)));
+        }
+        for (double loss : LOSSRATES) {
+            benchmarks.add(new Benchmark("Simulation events loss=" + loss, () -> simulation(loss)));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-45s %15s %12s", "Benchmark", "ops/s", "error"));
+        for (Benchmark b : benchmarks) {
+            if (selected(b.name, argv)) {
+                measure(b);
+            }
+        }
+    }
+
+    private static boolean selected(String name, String[] filters) {
+        if (filters.length == 0) {
+            return true;
+        }
+        for (String f : filters) {
+            if (name.contains(f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void measure(Benchmark b) {
+        for (int i = 0; i < WARMUPS; i++) {
+            b.body.run();
+        }
+
+        double[] rates = new double[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long ops = b.body.run();
+            long elapsed = System.nanoTime() - start;
+            rates[i] = ops * 1e9 / elapsed;
+        }
+
+        double mean = 0.0;
+        for (double r : rates) {
+            mean += r;
+        }
+        mean /= rates.length;
+
+        double variance = 0.0;
+        for (double r : rates) {
+            variance += (r - mean) * (r - mean);
+        }
+        double stddev = Math.sqrt(variance / (rates.length - 1));
+
+        System.out.println(String.format(Locale.ROOT, "%-45s %15.0f %12.0f", b.name, mean, stddev));
+    }
+
+    // A simulator with logging off and no run in progress, used as the context for hosts and events
+    private static NetworkSimulator idleSimulator(double loss, double corrupt) {
+        NetworkSimulator simulator = new NetworkSimulator();
+        simulator.initSimulator(1, loss, corrupt, 10.0, 1234, SimulatorLog.off());
+        return simulator;
+    }
+
+    // Steady state: the queue holds 'size' events, each operation adds one and removes the soonest
+    private static long addRemoveNext(int size) {
+        final int ops = 200000;
+        Random rand = new Random(1);
+        EventList list = new EventList();
+        for (int i = 0; i < size; i++) {
+            list.add(new Event(rand.nextDouble() * size, EventType.FROMAPP, NetworkSimulator.A));
+        }
+
+        double now = 0.0;
+        long acc = 0;
+        for (int i = 0; i < ops; i++) {
+            list.add(new Event(now + rand.nextDouble() * size, EventType.FROMAPP, NetworkSimulator.A));
+            Event next = list.removeNext();
+            now = next.getTime();
+            acc += next.getEntity();
+        }
+        sink += acc;
+        return ops;
+    }
+
+    // A timer is started and stopped by searching for it, with 'size' other events in the queue
+    private static long removeTimer(int size) {
+        final int ops = Math.max(200, 2000000 / size);
+        EventList list = filledList(size);
+
+        long acc = 0;
+        for (int i = 0; i < ops; i++) {
+            list.add(new Event(i, EventType.TIMERINTERRUPT, NetworkSimulator.A));
+            acc += list.removeTimer(NetworkSimulator.A).getEntity();
+        }
+        sink += acc;
+        return ops;
+    }
+
+    // A timer is started and stopped through its handle, with 'size' other events in the queue
+    private static long cancelTimer(int size) {
+        final int ops = 200000;
+        EventList list = filledList(size);
+
+        long acc = 0;
+        for (int i = 0; i < ops; i++) {
+            Event timer = new Event(i, EventType.TIMERINTERRUPT, NetworkSimulator.A);
+            list.add(timer);
+            if (list.cancel(timer)) {
+                acc++;
+            }
+        }
+        sink += acc;
+        return ops;
+    }
+
+    private static EventList filledList(int size) {
+        Random rand = new Random(1);
+        EventList list = new EventList();
+        for (int i = 0; i < size; i++) {
+            list.add(new Event(rand.nextDouble() * size, EventType.FROMNETWORK, NetworkSimulator.B));
+        }
+        return list;
+    }
+
+    // Sends packets from A; the event list is drained every so often so it does not grow without bound
+    private static long udtSend(double loss, double corrupt) {
+        final int ops = 200000;
+        NetworkSimulator simulator = idleSimulator(loss, corrupt);
+        Sender sender = new Sender(NetworkSimulator.A, simulator);
+        Packet packet = new Packet(1, -1, 0, "aaaaaaaaaaaaaaaaaaaa");
+
+        for (int i = 0; i < ops; i++) {
+            sender.udtSend(packet);
+            if ((i & 1023) == 1023) {
+                while (simulator.getEventList().removeNext() != null) {
+                    // drop the scheduled arrivals
+                }
+            }
+        }
+        sink += simulator.getEventList().size();
+        return ops;
+    }
+
+    // Feeds packets with a wrong checksum to a host, which validates and discards them
+    private static long checksum(boolean atSender) {
+        final int ops = 1000000;
+        NetworkSimulator simulator = idleSimulator(0.0, 0.0);
+        NetworkHost host;
+        if (atSender) {
+            host = new Sender(NetworkSimulator.A, simulator);
+        } else {
+            host = new Receiver(NetworkSimulator.B, simulator);
+        }
+        host.init();
+
+        Packet packet = new Packet(0, 0, -1, "aaaaaaaaaaaaaaaaaaaa");
+        for (int i = 0; i < ops; i++) {
+            host.input(packet);
+        }
+        sink += simulator.getEventList().size();
+        return ops;
+    }
+
+    // Writes a packet in its wire format to a reused buffer and reads it back
+    private static long encodeDecode() {
+        final int ops = 1000000;
+        Packet packet = new Packet(7, -1, 0, "aaaaaaaaaaaaaaaaaaaa");
+        ByteBuffer buffer = ByteBuffer.allocate(packet.getEncodedLength());
+        for (int i = 0; i < ops; i++) {
+            buffer.clear();
+            packet.encode(buffer);
+            buffer.flip();
+            sink += Packet.decode(buffer).getPayloadLength();
+        }
+        return ops;
+    }
+
+    // Checksums a 1500-byte payload over and over; the operations counted are bytes, so ops/s is bytes/s
+    private static long checksumBytes(PacketChecksum checksum) {
+        final int packets = 20000;
+        byte[] payload = new byte[1500];
+        new Random(1).nextBytes(payload);
+        for (int i = 0; i < packets; i++) {
+            sink += checksum.compute(i, -1, payload, null);
+        }
+        return (long) packets * payload.length;
+    }
+
+    // Applies a change of sequence number to a checksum without going over the payload
+    private static long checksumUpdate(PacketChecksum checksum) {
+        final int ops = 1000000;
+        int[] seqnums = new Random(1).ints(1024).toArray();
+        int value = checksum.compute(seqnums[0], -1, new byte[1500], null);
+        for (int i = 0; i < ops; i++) {
+            value = checksum.updateSeqnum(value, seqnums[i & 1023], seqnums[(i + 1) & 1023]);
+        }
+        sink += value;
+        return ops;
+    }
+
+    // A whole simulation; the operations counted are the events processed by the main loop
+    private static long simulation(double loss) {
+        NetworkSimulator simulator = new NetworkSimulator();
+        simulator.initSimulator(20000, loss, loss / 2, 100.0, 42, SimulatorLog.off());
+        simulator.runSimulator();
+        return simulator.getMetrics().getEventsProcessed();
+    }
+}
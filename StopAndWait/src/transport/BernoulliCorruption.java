@@ -0,0 +1,51 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * The original corruption model: every packet is corrupted independently with the same probability, whatever its length.
+ * A corrupted packet has one thing changed: the first payload character (or the first SACK block of an ACK that has one),
+ * three times out of four, otherwise the sequence or the acknowledgement number.
+ */
+public class BernoulliCorruption implements CorruptionModel {
+
+    private final double probability;
+
+    public BernoulliCorruption(double probability) {
+        this.probability = probability;
+    }
+
+    @Override
+    public Packet corrupt(Packet p, Random rand) {
+        if (rand.nextDouble() >= probability) {
+            return null;
+        }
+        Packet packet = new Packet(p);
+
+        double x = rand.nextDouble();
+        if (x < 0.75 && packet.hasSack()) {
+            // corrupt the first SACK block of an ACK that has one (instead of its empty payload)
+            int[] sack = packet.getSack();
+            sack[0]++;
+        } else if (x < 0.75) {
+            // corrupt the payload - by changing the first character
+            // the copy shares its payload bytes with the original, so the changed payload is a new array
+            byte[] payload = packet.getPayloadBytes();
+
+            if (payload.length < 2) {
+                payload = new byte[] {'='};
+            } else {
+                payload = payload.clone();
+                payload[0] = '=';
+            }
+            packet.setPayloadBytes(payload);
+        } else if (x < 0.875) {
+            // corrupt the sequence number
+            packet.setSeqnum(Math.abs(rand.nextInt()));
+        } else {
+            // corrupt the acknowledgment number
+            packet.setAcknum(Math.abs(rand.nextInt()));
+        }
+        return packet;
+    }
+}
@@ -0,0 +1,94 @@
+package transport;
+
+import java.util.Properties;
+
+/**
+ * Named settings for the protocols and the channel, read by the hosts when they are initialised.
+ * Names are written without the "transport." prefix, e.g. get("window") reads the property transport.window.
+ * By default the settings come from the system properties, so a single run is configured with -Dtransport.window=64;
+ * programs running several simulations (e.g. ParameterSweep) give each simulator its own Configuration.
+ */
+public class Configuration {
+
+    private static final String PREFIX = "transport.";
+
+    private final Properties properties;
+
+    public Configuration() {
+        properties = new Properties();
+    }
+
+    /**
+     * @return a Configuration holding a copy of the current transport.* system properties
+     */
+    public static Configuration fromSystemProperties() {
+        Configuration config = new Configuration();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(PREFIX)) {
+                config.set(name.substring(PREFIX.length()), System.getProperty(name));
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @return a copy of this Configuration, which can be changed without affecting this one
+     */
+    public Configuration copy() {
+        Configuration config = new Configuration();
+        config.properties.putAll(properties);
+        return config;
+    }
+
+    /**
+     * The settings for the channel in one direction: a setting given as name.atob (packets to B) or name.btoa (packets to A)
+     * replaces name, so e.g. transport.loss.btoa=0 lets every ACK through while data packets are lost as usual.
+     * This covers the link settings too, so a link can be modelled in one direction only (transport.bandwidth.atob).
+     * @param destination the host packets in this direction are for, NetworkSimulator.A or NetworkSimulator.B
+     * @return a copy of this Configuration with the direction's settings in place of the general ones
+     */
+    public Configuration forDirection(int destination) {
+        String suffix = destination == NetworkSimulator.B ? ".atob" : ".btoa";
+        Configuration config = copy();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.endsWith(suffix)) {
+                config.set(name.substring(0, name.length() - suffix.length()), properties.getProperty(name));
+            }
+        }
+        return config;
+    }
+
+    public Configuration set(String name, String value) {
+        properties.setProperty(name, value);
+        return this;
+    }
+
+    public String getString(String name, String defaultValue) {
+        return properties.getProperty(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    public long getLong(String name, long defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    @Override
+    public String toString() {
+        return properties.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package transport;
+
+import java.util.Random;
+
+/**
+ * Decides which packets the channel corrupts in one direction, and how.
+ * Chosen per run with transport.corruptmodel, and per direction with transport.corruptmodel.atob or .btoa (see Configuration.forDirection):
+ * "bernoulli" (the default, each packet corrupted independently with the corruption probability, whatever its length)
+ * or "ber" (independent bit errors, so longer packets are corrupted more often).
+ * The corruption probability is the run's, unless transport.corrupt (or transport.corrupt.atob, .btoa) gives another one.
+ */
+public interface CorruptionModel {
+
+    /**
+     * Decides whether the next packet sent in this direction is corrupted
+     * @param packet the packet, which is left as it is
+     * @param rand the simulator's random number generator
+     * @return a corrupted copy of the packet, or null if it gets through intact
+     */
+    Packet corrupt(Packet packet, Random rand);
+
+    /**
+     * Creates the corruption model selected by the configuration.
+     * @param config the settings for one direction (see Configuration.forDirection)
+     * @param corruptProb the run's corruption probability
+     * @return the model
+     */
+    static CorruptionModel forConfiguration(Configuration config, double corruptProb) {
+        double probability = config.getDouble("corrupt", corruptProb);
+        String name = config.getString("corruptmodel", "bernoulli");
+        switch (name) {
+            case "bernoulli":
+                return new BernoulliCorruption(probability);
+            case "ber":
+                double ber = config.getDouble("ber", -1);
+                return ber >= 0 ? new BitErrorCorruption(ber) : BitErrorCorruption.withReferenceProbability(probability);
+            default:
+                throw new IllegalArgumentException("Unknown corruption model " + name);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package transport;
+
+/**
+ * How much the simulator writes to its log. Each level includes everything written by the levels before it.
+ */
+public enum LogLevel {
+    OFF, SUMMARY, EVENT, DEBUG;
+}
@@ -0,0 +1,175 @@
+package transport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A real network between the hosts, selected with transport.network=udp: each host has a non-blocking UDP socket on the
+ * loopback address, and packets travel between them as datagrams in their wire format (see Packet), after udtSend has
+ * applied the channel's loss and corruption. One Selector waits on both sockets, so the simulator stays single-threaded:
+ * it runs events from its EventList when the wall clock reaches them, and hands the hosts the packets arriving in between.
+ * Times are in milliseconds since open().
+ *
+ * Each datagram is the packet preceded by the System.nanoTime() it was sent at, so every packet's one-way latency is measured.
+ */
+public class LoopbackUdpNetwork {
+
+    private static final int TIMESTAMPSIZE = 8;
+    private static final int MAXDATAGRAMSIZE = 65507;   // the most a UDP datagram over IPv4 can carry
+    private static final int SOCKETBUFFERSIZE = 1 << 20;
+
+    private final Metrics metrics;
+
+    private Selector selector;
+    private DatagramChannel channelA;   // the sender's socket, connected to the receiver's
+    private DatagramChannel channelB;   // the receiver's socket, connected to the sender's
+
+    // Allocated once and reused for every datagram
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAXDATAGRAMSIZE);
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAXDATAGRAMSIZE);
+
+    private long startNanos;            // System.nanoTime() when the network was opened, time 0
+    private long inFlight;              // datagrams sent but not received yet
+
+    public LoopbackUdpNetwork(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Opens and connects the hosts' sockets, and starts the clock
+    public void open() {
+        try {
+            selector = Selector.open();
+            channelA = openChannel(NetworkSimulator.A);
+            channelB = openChannel(NetworkSimulator.B);
+            channelA.connect(channelB.getLocalAddress());
+            channelB.connect(channelA.getLocalAddress());
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Could not open the loopback UDP sockets", e);
+        }
+        startNanos = System.nanoTime();
+        inFlight = 0;
+    }
+
+    // A non-blocking socket on an ephemeral loopback port, registered with the selector for the given host
+    private DatagramChannel openChannel(int entity) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKETBUFFERSIZE);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKETBUFFERSIZE);
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, entity);
+        return channel;
+    }
+
+    public void close() {
+        try {
+            if (channelA != null) {
+                channelA.close();
+            }
+            if (channelB != null) {
+                channelB.close();
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not close the loopback UDP sockets", e);
+        }
+    }
+
+    // The wall-clock time, in milliseconds since open()
+    public double now() {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    // Whether every datagram sent has arrived
+    public boolean isIdle() {
+        return inFlight == 0;
+    }
+
+    /**
+     * Sends a packet to a host as a datagram. If the sending socket's buffer is full the datagram is dropped, as a real network would.
+     * @param destination the host the packet is for, A or B
+     * @param packet the packet, encoded straight away so it can be changed afterwards
+     */
+    public void send(int destination, Packet packet) {
+        DatagramChannel channel = destination == NetworkSimulator.B ? channelA : channelB;
+        if (TIMESTAMPSIZE + packet.getEncodedLength() > MAXDATAGRAMSIZE) {
+            throw new IllegalArgumentException("Packet too long for a UDP datagram: " + packet.getEncodedLength() + " bytes");
+        }
+        sendBuffer.clear();
+        sendBuffer.putLong(System.nanoTime());
+        packet.encode(sendBuffer);
+        sendBuffer.flip();
+        try {
+            if (channel.write(sendBuffer) > 0) {
+                inFlight++;
+                metrics.datagramSent();
+            } else {
+                metrics.datagramDropped();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not send a datagram", e);
+        }
+    }
+
+    /**
+     * Waits until a datagram arrives or the wall clock reaches a given time, then hands over every datagram that has arrived.
+     * Waits are only as precise as Selector.select(), so it may return a little early; waits under a millisecond don't block.
+     * @param until the time to wait until, in milliseconds since open()
+     * @param arrived called with each packet and the host it's for (A or B), in the order they arrived at that host
+     * @return true if at least one datagram arrived
+     */
+    public boolean receive(double until, ObjIntConsumer<Packet> arrived) {
+        try {
+            double wait = until - now();
+            int ready = wait < 1 ? selector.selectNow() : selector.select((long) wait);
+            if (ready == 0) {
+                return false;
+            }
+
+            boolean any = false;
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                int entity = (Integer) key.attachment();
+                while (true) {
+                    receiveBuffer.clear();
+                    if (channel.receive(receiveBuffer) == null) {
+                        break;
+                    }
+                    receiveBuffer.flip();
+                    inFlight--;
+                    any = true;
+                    if (receiveBuffer.remaining() < TIMESTAMPSIZE) {
+                        continue;
+                    }
+                    metrics.datagramReceived((System.nanoTime() - receiveBuffer.getLong()) / 1e6);
+                    Packet packet;
+                    try {
+                        packet = Packet.decode(receiveBuffer);
+                    } catch (IllegalArgumentException e) {
+                        // not a whole packet: treated like any other packet that can't be read
+                        continue;
+                    }
+                    arrived.accept(packet, entity);
+                }
+            }
+            return any;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not receive a datagram", e);
+        }
+    }
+}
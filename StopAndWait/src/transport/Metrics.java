@@ -0,0 +1,613 @@
+package transport;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Counters describing how well the protocol did in one simulation run.
+ * Each NetworkSimulator has its own Metrics, updated by the simulator and its hosts as events happen.
+ * Updating a counter is a field increment, so metrics are always collected.
+ */
+public class Metrics {
+
+    private long eventsProcessed;       // events taken off the EventList by the main simulation loop
+
+    private long messagesOffered;       // messages passed by the application to the sender (FROMAPP events)
+    private long messagesDropped;       // messages the sender refused to take (a full send queue with transport.backpressure=reject)
+    private long messagesDelivered;     // messages passed up to the application at the receiver (B)
+    private long bytesDelivered;        // payload characters passed up to the application at the receiver
+
+    private long packetsSent;           // packets passed to udtSend by the sender (A), including retransmissions
+    private long retransmissions;       // packets passed to udtSend by the sender (A) that it had already sent before
+    private long acksSent;              // packets passed to udtSend by the receiver (B)
+    private long packetsLost;           // packets (in either direction) lost by the channel
+    private long packetsCorrupted;      // packets (in either direction) corrupted by the channel
+    private long packetsReordered;      // packets (in either direction) the channel held back so later ones could overtake them
+    private long packetsDuplicated;     // packets (in either direction) the channel delivered twice
+    private long lossBursts;            // runs of consecutive packets lost in the same direction
+    private int lossBurstMax;
+    private final int[] lossBurst = new int[2]; // packets lost in a row so far in each direction (Link.TOB, Link.TOA)
+    private long dataBytesSent;         // wire format length (Packet.getEncodedLength) of the packets sent by A, including retransmissions
+    private long ackBytesSent;          // wire format length of the packets sent by B
+
+    private long timersStarted;         // timers started by either host
+    private long timeouts;              // sender's retransmission timers that expired
+
+    private double busyTime;            // time during which at least one packet was in flight from A to B
+    private double busyUntil;           // arrival time of the last packet scheduled from A to B
+    private double lastDeliveryTime;    // simulated time of the last delivery to the receiver's application
+    private double endTime;             // simulated time at which the simulation finished
+
+    private long cwndChanges;           // times the sender's congestion window was reported
+    private double cwnd;                // the sender's congestion window, in packets, since cwndTime
+    private double cwndTime;
+    private double cwndArea;            // integral of the congestion window over time, for its average
+    private double cwndMax;
+
+    private long messagesQueued;        // messages that waited in the send queue before the sender could take them
+    private int queueDepth;             // messages in the send queue since queueTime
+    private double queueTime;
+    private double queueArea;           // integral of the queue depth over time, for its average
+    private int queueMaxDepth;
+    private double queueDelayTotal;     // time spent in the send queue by the messages that have left it
+    private double queueDelayMax;
+    private long applicationBlocks;     // times the application was blocked by a full send queue
+    private long messagesRetried;       // times a message was offered again later because the send queue was full
+
+    private long datagramsSent;         // with transport.network=udp, datagrams handed to the sockets
+    private long datagramsReceived;
+    private long datagramsDropped;      // datagrams the sockets had no buffer space for
+    private double latencyTotal;        // one-way latency of the datagrams received, in milliseconds of wall-clock time
+    private double latencyMax;
+
+    private boolean linkModelled;       // with transport.bandwidth, per direction (Link.TOB, Link.TOA):
+    private double bandwidthDelayProduct;   // bytes the link to B (or to A if only it is modelled) carries in a round trip of propagation delay
+    private final long[] linkPacketsQueued = new long[2];
+    private final long[] linkPacketsDropped = new long[2];
+    private final int[] linkQueueDepth = new int[2];    // packets in the link's queue since linkQueueTime
+    private final double[] linkQueueTime = new double[2];
+    private final double[] linkQueueArea = new double[2];   // integral of the queue length over time, for its average
+    private final int[] linkQueueMax = new int[2];
+
+    private double realTimeSpeedup;     // with transport.realtime, simulated time units per wall-clock millisecond (0 if not paced)
+    private double realTimeTolerance;   // how many milliseconds late an event can start without counting as late
+    private long eventsPaced;
+    private long eventsLate;
+    private double latenessTotal;       // how late the paced events started, in wall-clock milliseconds
+    private double latenessMax;
+    private double drift;               // how late the last paced event started
+    private double wallTime;            // wall-clock milliseconds the paced run took
+
+    private boolean cwndTraced;         // whether every change of the congestion window is kept (transport.cwndtrace)
+    private double[] cwndTraceTimes = new double[0];
+    private double[] cwndTraceValues = new double[0];
+    private int cwndTraceLength;
+
+    void eventProcessed() {
+        eventsProcessed++;
+    }
+
+    void messageOffered() {
+        messagesOffered++;
+    }
+
+    void messageDropped() {
+        messagesDropped++;
+    }
+
+    void messageDelivered(double time, int length) {
+        messagesDelivered++;
+        bytesDelivered += length;
+        lastDeliveryTime = time;
+    }
+
+    void packetSent(boolean retransmission, int wireBytes) {
+        packetsSent++;
+        dataBytesSent += wireBytes;
+        if (retransmission) {
+            retransmissions++;
+        }
+    }
+
+    void ackSent(int wireBytes) {
+        acksSent++;
+        ackBytesSent += wireBytes;
+    }
+
+    void packetLost(int direction) {
+        packetsLost++;
+        if (lossBurst[direction]++ == 0) {
+            lossBursts++;
+        }
+        lossBurstMax = Math.max(lossBurstMax, lossBurst[direction]);
+    }
+
+    void packetReordered() {
+        packetsReordered++;
+    }
+
+    void packetDuplicated() {
+        packetsDuplicated++;
+    }
+
+    void packetNotLost(int direction) {
+        lossBurst[direction] = 0;
+    }
+
+    void packetCorrupted() {
+        packetsCorrupted++;
+    }
+
+    void datagramSent() {
+        datagramsSent++;
+    }
+
+    void datagramDropped() {
+        datagramsDropped++;
+    }
+
+    void datagramReceived(double latency) {
+        datagramsReceived++;
+        latencyTotal += latency;
+        if (latency > latencyMax) {
+            latencyMax = latency;
+        }
+    }
+
+    void linkStarted(double bandwidthDelayProduct) {
+        linkModelled = true;
+        this.bandwidthDelayProduct = bandwidthDelayProduct;
+    }
+
+    void linkQueueDepth(int direction, double time, int depth) {
+        linkQueueArea[direction] += linkQueueDepth[direction] * (time - linkQueueTime[direction]);
+        if (depth > linkQueueDepth[direction]) {
+            linkPacketsQueued[direction]++;
+        }
+        linkQueueDepth[direction] = depth;
+        linkQueueTime[direction] = time;
+        linkQueueMax[direction] = Math.max(linkQueueMax[direction], depth);
+    }
+
+    void linkPacketDropped(int direction) {
+        linkPacketsDropped[direction]++;
+    }
+
+    void realTimeStarted(double speedup, double tolerance) {
+        realTimeSpeedup = speedup;
+        realTimeTolerance = tolerance;
+    }
+
+    void eventPaced(double lateness) {
+        eventsPaced++;
+        latenessTotal += lateness;
+        if (lateness > latenessMax) {
+            latenessMax = lateness;
+        }
+        if (lateness > realTimeTolerance) {
+            eventsLate++;
+        }
+        drift = lateness;
+    }
+
+    void realTimeFinished(double wallTime) {
+        this.wallTime = wallTime;
+    }
+
+    // A packet from A to B will be on the channel from sendTime until arrivalTime
+    void dataInFlight(double sendTime, double arrivalTime) {
+        if (arrivalTime > busyUntil) {
+            busyTime += arrivalTime - Math.max(sendTime, busyUntil);
+            busyUntil = arrivalTime;
+        }
+    }
+
+    void timerStarted() {
+        timersStarted++;
+    }
+
+    void timeout() {
+        timeouts++;
+    }
+
+    // The send queue holds 'depth' messages from 'time'
+    void queueDepth(double time, int depth) {
+        queueArea += queueDepth * (time - queueTime);
+        queueDepth = depth;
+        queueTime = time;
+        queueMaxDepth = Math.max(queueMaxDepth, depth);
+    }
+
+    // A message left the send queue after waiting in it for 'delay'
+    void messageDequeued(double delay) {
+        messagesQueued++;
+        queueDelayTotal += delay;
+        queueDelayMax = Math.max(queueDelayMax, delay);
+    }
+
+    void applicationBlocked() {
+        applicationBlocks++;
+    }
+
+    void messageRetried() {
+        messagesRetried++;
+    }
+
+    void finished(double time) {
+        endTime = time;
+        queueArea += queueDepth * (time - queueTime);
+        queueTime = time;
+        if (cwndChanges > 0) {
+            cwndArea += cwnd * (time - cwndTime);
+            cwndTime = time;
+        }
+        for (int direction = 0; direction < 2; direction++) {
+            linkQueueArea[direction] += linkQueueDepth[direction] * (time - linkQueueTime[direction]);
+            linkQueueTime[direction] = time;
+        }
+    }
+
+    // Keep every change of the congestion window, so it can be plotted against time
+    public void setCongestionWindowTraced(boolean traced) {
+        cwndTraced = traced;
+    }
+
+    // The sender's congestion window has changed to 'window' packets at 'time'
+    void congestionWindow(double time, double window) {
+        if (cwndChanges > 0) {
+            cwndArea += cwnd * (time - cwndTime);
+        }
+        cwndChanges++;
+        cwnd = window;
+        cwndTime = time;
+        cwndMax = Math.max(cwndMax, window);
+
+        if (cwndTraced) {
+            if (cwndTraceLength == cwndTraceTimes.length) {
+                int capacity = Math.max(1024, 2 * cwndTraceLength);
+                cwndTraceTimes = Arrays.copyOf(cwndTraceTimes, capacity);
+                cwndTraceValues = Arrays.copyOf(cwndTraceValues, capacity);
+            }
+            cwndTraceTimes[cwndTraceLength] = time;
+            cwndTraceValues[cwndTraceLength] = window;
+            cwndTraceLength++;
+        }
+    }
+
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    public long getMessagesOffered() {
+        return messagesOffered;
+    }
+
+    public long getMessagesDropped() {
+        return messagesDropped;
+    }
+
+    public long getMessagesDelivered() {
+        return messagesDelivered;
+    }
+
+    public long getBytesDelivered() {
+        return bytesDelivered;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    public long getAcksSent() {
+        return acksSent;
+    }
+
+    public long getPacketsLost() {
+        return packetsLost;
+    }
+
+    public long getPacketsCorrupted() {
+        return packetsCorrupted;
+    }
+
+    public long getPacketsReordered() {
+        return packetsReordered;
+    }
+
+    public long getPacketsDuplicated() {
+        return packetsDuplicated;
+    }
+
+    public long getLossBursts() {
+        return lossBursts;
+    }
+
+    // Average number of packets lost in a row in one direction
+    public double getMeanLossBurst() {
+        if (lossBursts == 0) {
+            return 0.0;
+        }
+        return (double) packetsLost / lossBursts;
+    }
+
+    public int getMaxLossBurst() {
+        return lossBurstMax;
+    }
+
+    public long getDataBytesSent() {
+        return dataBytesSent;
+    }
+
+    public long getAckBytesSent() {
+        return ackBytesSent;
+    }
+
+    // Payload characters delivered per byte put on the wire in either direction, headers, retransmissions and ACKs included
+    public double getEfficiency() {
+        long wireBytes = dataBytesSent + ackBytesSent;
+        if (wireBytes == 0) {
+            return 0.0;
+        }
+        return (double) bytesDelivered / wireBytes;
+    }
+
+    public long getTimersStarted() {
+        return timersStarted;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    // The time at which the last message was delivered, i.e. when the transfer completed
+    public double getCompletionTime() {
+        return lastDeliveryTime;
+    }
+
+    public double getEndTime() {
+        return endTime;
+    }
+
+    // Messages delivered per unit of simulated time
+    public double getThroughput() {
+        if (lastDeliveryTime <= 0.0) {
+            return 0.0;
+        }
+        return messagesDelivered / lastDeliveryTime;
+    }
+
+    // Payload characters delivered to the application per unit of simulated time
+    public double getGoodput() {
+        if (lastDeliveryTime <= 0.0) {
+            return 0.0;
+        }
+        return bytesDelivered / lastDeliveryTime;
+    }
+
+    // Fraction of the simulation during which the channel from A to B was carrying at least one packet
+    public double getUtilisation() {
+        if (endTime <= 0.0) {
+            return 0.0;
+        }
+        return busyTime / endTime;
+    }
+
+    // The congestion window at the end of the run (0 if the sender has none)
+    public double getCongestionWindow() {
+        return cwnd;
+    }
+
+    public double getMaxCongestionWindow() {
+        return cwndMax;
+    }
+
+    // Time-weighted average of the congestion window since it was first reported
+    public double getAverageCongestionWindow() {
+        if (cwndChanges == 0 || endTime <= 0.0) {
+            return 0.0;
+        }
+        return cwndArea / endTime;
+    }
+
+    public long getMessagesQueued() {
+        return messagesQueued;
+    }
+
+    public int getMaxQueueDepth() {
+        return queueMaxDepth;
+    }
+
+    // Time-weighted average number of messages in the send queue
+    public double getAverageQueueDepth() {
+        if (endTime <= 0.0) {
+            return 0.0;
+        }
+        return queueArea / endTime;
+    }
+
+    // Average time a message spent in the send queue, over the messages that had to wait in it
+    public double getAverageQueueDelay() {
+        if (messagesQueued == 0) {
+            return 0.0;
+        }
+        return queueDelayTotal / messagesQueued;
+    }
+
+    public double getMaxQueueDelay() {
+        return queueDelayMax;
+    }
+
+    public long getApplicationBlocks() {
+        return applicationBlocks;
+    }
+
+    public long getMessagesRetried() {
+        return messagesRetried;
+    }
+
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    public long getDatagramsReceived() {
+        return datagramsReceived;
+    }
+
+    public long getDatagramsDropped() {
+        return datagramsDropped;
+    }
+
+    // Datagrams received per second of wall-clock time (time is in milliseconds with transport.network=udp)
+    public double getDatagramRate() {
+        if (endTime <= 0.0) {
+            return 0.0;
+        }
+        return datagramsReceived / (endTime / 1000);
+    }
+
+    // Average one-way latency of the datagrams received, in milliseconds
+    public double getAverageLatency() {
+        if (datagramsReceived == 0) {
+            return 0.0;
+        }
+        return latencyTotal / datagramsReceived;
+    }
+
+    public double getMaxLatency() {
+        return latencyMax;
+    }
+
+    // The bytes the link to B carries in a round trip of propagation delay (0 without a link model)
+    public double getBandwidthDelayProduct() {
+        return bandwidthDelayProduct;
+    }
+
+    // Packets that got into the link's queue in a direction (Link.TOB or Link.TOA)
+    public long getLinkPacketsQueued(int direction) {
+        return linkPacketsQueued[direction];
+    }
+
+    // Packets the link's queue dropped in a direction, being full or by RED
+    public long getLinkPacketsDropped(int direction) {
+        return linkPacketsDropped[direction];
+    }
+
+    public int getMaxLinkQueueDepth(int direction) {
+        return linkQueueMax[direction];
+    }
+
+    // Time-weighted average number of packets in the link's queue in a direction, the one being sent included
+    public double getAverageLinkQueueDepth(int direction) {
+        if (endTime <= 0.0) {
+            return 0.0;
+        }
+        return linkQueueArea[direction] / endTime;
+    }
+
+    public double getRealTimeSpeedup() {
+        return realTimeSpeedup;
+    }
+
+    // Paced events that started more than the tolerance late
+    public long getEventsLate() {
+        return eventsLate;
+    }
+
+    // Whether every paced event started within the tolerance, i.e. the run kept up with real time at its speed-up
+    public boolean isKeepingUp() {
+        return eventsLate == 0;
+    }
+
+    // Average lateness of the paced events, in wall-clock milliseconds
+    public double getAverageLateness() {
+        if (eventsPaced == 0) {
+            return 0.0;
+        }
+        return latenessTotal / eventsPaced;
+    }
+
+    public double getMaxLateness() {
+        return latenessMax;
+    }
+
+    // How late the last paced event started, in wall-clock milliseconds
+    public double getDrift() {
+        return drift;
+    }
+
+    public double getWallTime() {
+        return wallTime;
+    }
+
+    // The times at which the congestion window changed, if traced
+    public double[] getCongestionWindowTraceTimes() {
+        return Arrays.copyOf(cwndTraceTimes, cwndTraceLength);
+    }
+
+    // The congestion window after each change, if traced
+    public double[] getCongestionWindowTraceValues() {
+        return Arrays.copyOf(cwndTraceValues, cwndTraceLength);
+    }
+
+    // A multi-line report, printed at the end of a run
+    public String summary() {
+        String report = String.format(Locale.ROOT,
+                "Messages: offered %d  dropped at sender %d  delivered %d (%d bytes)%n"
+                + "Packets: sent %d  retransmitted %d  ACKs sent %d  lost %d  corrupted %d%n"
+                + "Wire bytes: data %d  ACKs %d  efficiency %.4f%n"
+                + "Timers: started %d  timeouts %d%n"
+                + "Completion time %.3f  throughput %.5f msg/unit  goodput %.5f bytes/unit  utilisation %.4f  events %d",
+                messagesOffered, messagesDropped, messagesDelivered, bytesDelivered,
+                packetsSent, retransmissions, acksSent, packetsLost, packetsCorrupted,
+                dataBytesSent, ackBytesSent, getEfficiency(),
+                timersStarted, timeouts,
+                lastDeliveryTime, getThroughput(), getGoodput(), getUtilisation(), eventsProcessed);
+
+        if (packetsReordered > 0 || packetsDuplicated > 0) {
+            report += String.format(Locale.ROOT, "%nDisorder: reordered %d  duplicated %d", packetsReordered, packetsDuplicated);
+        }
+        if (lossBursts > 0) {
+            report += String.format(Locale.ROOT, "%nLoss bursts: %d  mean length %.2f  longest %d", lossBursts, getMeanLossBurst(), lossBurstMax);
+        }
+        if (queueMaxDepth > 0) {
+            report += String.format(Locale.ROOT, "%nSend queue: average depth %.2f  max depth %d  average delay %.3f  max delay %.3f  blocked %d  retried %d",
+                    getAverageQueueDepth(), queueMaxDepth, getAverageQueueDelay(), queueDelayMax, applicationBlocks, messagesRetried);
+        }
+        if (linkModelled) {
+            report += String.format(Locale.ROOT, "%nLink: bandwidth-delay product %.1f bytes", bandwidthDelayProduct);
+            String[] names = {"A->B", "B->A"};
+            for (int direction = 0; direction < 2; direction++) {
+                report += String.format(Locale.ROOT, "%n  %s queue: average depth %.2f  max depth %d  queued %d  dropped %d",
+                        names[direction], getAverageLinkQueueDepth(direction), linkQueueMax[direction],
+                        linkPacketsQueued[direction], linkPacketsDropped[direction]);
+            }
+        }
+        if (datagramsSent > 0) {
+            report += String.format(Locale.ROOT, "%nUDP: datagrams sent %d  received %d  dropped by sockets %d  %.0f datagrams/s  latency average %.4f ms  max %.4f ms",
+                    datagramsSent, datagramsReceived, datagramsDropped, getDatagramRate(), getAverageLatency(), latencyMax);
+        }
+        if (eventsPaced > 0) {
+            report += String.format(Locale.ROOT, "%nReal time: speed-up %s  wall time %.3f ms  late events %d of %d (by more than %s ms)  "
+                    + "lateness average %.4f ms  max %.4f ms  final drift %.4f ms  %s",
+                    realTimeSpeedup, wallTime, eventsLate, eventsPaced, realTimeTolerance,
+                    getAverageLateness(), latenessMax, drift, isKeepingUp() ? "kept up" : "fell behind");
+        }
+        if (cwndChanges > 0) {
+            report += String.format(Locale.ROOT, "%nCongestion window: final %.2f  average %.2f  max %.2f",
+                    cwnd, getAverageCongestionWindow(), cwndMax);
+        }
+        return report;
+    }
+
+    @Override
+    public String toString() {
+        return ("events: " + eventsProcessed + "  offered: " + messagesOffered + "  dropped: " + messagesDropped
+                + "  delivered: " + messagesDelivered + "  packets sent: " + packetsSent + "  retransmissions: " + retransmissions
+                + "  lost: " + packetsLost + "  corrupted: " + packetsCorrupted + "  timeouts: " + timeouts
+                + "  completion time: " + lastDeliveryTime + "  throughput: " + getThroughput());
+    }
+}
@@ -0,0 +1,197 @@
+package transport;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the simulator once for every combination of loss probability, corruption probability, message delay, message size,
+ * real-time speed-up and seed,
+ * in parallel, each run with its own NetworkSimulator. One CSV row is written per run as soon as it finishes,
+ * so rows are not in grid order.
+ *
+ * Usage: ParameterSweep [--messages n] [--loss list] [--corrupt list] [--delay list] [--size list] [--speedup list] [--seed list]
+ *                       [--threads n] [--out file] [--set name=value]...
+ * where a list is either comma separated values (0,0.1,0.2) or a range start:end:step (0:0.3:0.05),
+ * --size gives mean message sizes (transport.messagesize, see MessageSizes),
+ * --speedup gives real-time speed-ups to pace the runs at (transport.realtime, see RealTimePacer; 0 for as fast as possible),
+ * whose kept_up column shows the largest speed-up at which the protocol still runs in real time (best with --threads 1),
+ * and --set gives a protocol or channel setting (see Configuration) used by every run.
+ */
+public class ParameterSweep {
+
+    private static final String HEADER = "loss,corrupt,delay,message_size,speedup,seed,messages,offered,dropped,delivered,packets_sent,retransmissions,"
+            + "lost,corrupted,timeouts,completion_time,throughput,goodput,utilisation,"
+            + "max_queue_depth,average_queue_delay,bytes_delivered,wire_bytes,efficiency,"
+            + "late_events,max_lateness,kept_up,average_link_queue,max_link_queue,link_dropped";
+
+    private int messages = 1000;
+    private double[] losses = {0.0};
+    private double[] corrupts = {0.0};
+    private double[] delays = {10.0};
+    private double[] sizes = null;      // null: the message size set in the configuration
+    private double[] speedups = null;   // null: the real-time speed-up set in the configuration
+    private double[] seeds = {1};
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String outFile = null;
+    private Configuration configuration = Configuration.fromSystemProperties();
+
+    public static void main(String[] argv) throws IOException, InterruptedException, ExecutionException {
+        ParameterSweep sweep = new ParameterSweep();
+
+        for (int i = 0; i < argv.length; i += 2) {
+            if (i + 1 == argv.length) {
+                System.err.println("Missing value for option " + argv[i]);
+                System.exit(-1);
+            }
+            String value = argv[i + 1];
+            switch (argv[i]) {
+                case "--messages":
+                    sweep.messages = Integer.parseInt(value);
+                    break;
+                case "--loss":
+                    sweep.losses = parseList(value);
+                    break;
+                case "--corrupt":
+                    sweep.corrupts = parseList(value);
+                    break;
+                case "--delay":
+                    sweep.delays = parseList(value);
+                    break;
+                case "--size":
+                    sweep.sizes = parseList(value);
+                    break;
+                case "--speedup":
+                    sweep.speedups = parseList(value);
+                    break;
+                case "--seed":
+                    sweep.seeds = parseList(value);
+                    break;
+                case "--threads":
+                    sweep.threads = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    sweep.outFile = value;
+                    break;
+                case "--set":
+                    int equals = value.indexOf('=');
+                    if (equals <= 0) {
+                        System.err.println("--set needs name=value, not " + value);
+                        System.exit(-1);
+                    }
+                    sweep.configuration.set(value.substring(0, equals), value.substring(equals + 1));
+                    break;
+                default:
+                    System.err.println("Unknown option " + argv[i]);
+                    System.exit(-1);
+            }
+        }
+
+        PrintWriter out;
+        if (sweep.outFile == null) {
+            out = new PrintWriter(System.out);
+        } else {
+            out = new PrintWriter(new FileWriter(sweep.outFile));
+        }
+
+        sweep.run(out);
+        out.close();
+    }
+
+    // Parses "a,b,c" or "start:end:step" (end included)
+    private static double[] parseList(String text) {
+        if (text.contains(":")) {
+            String[] parts = text.split(":");
+            double start = Double.parseDouble(parts[0]);
+            double end = Double.parseDouble(parts[1]);
+            double step = Double.parseDouble(parts[2]);
+            int count = (int) Math.floor((end - start) / step + 1e-9) + 1;
+            double[] values = new double[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = start + i * step;
+            }
+            return values;
+        }
+
+        String[] parts = text.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Double.parseDouble(parts[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Runs every combination of the parameter grids and writes one row per run to out
+     * @param out where the CSV is written; rows are written from the worker threads, one at a time
+     * @throws InterruptedException if interrupted while waiting for the runs to finish
+     * @throws ExecutionException if a run failed; the runs not started yet are cancelled
+     */
+    public void run(PrintWriter out) throws InterruptedException, ExecutionException {
+        out.println(HEADER);
+
+        double[] sizeGrid = sizes != null ? sizes : new double[] {configuration.getDouble("messagesize", NetworkSimulator.MAXDATASIZE)};
+        double[] speedupGrid = speedups != null ? speedups : new double[] {configuration.getDouble("realtime", 0)};
+        List<Runnable> runs = new ArrayList<>();
+        for (double loss : losses) {
+            for (double corrupt : corrupts) {
+                for (double delay : delays) {
+                    for (double size : sizeGrid) {
+                        for (double speedup : speedupGrid) {
+                            for (double seed : seeds) {
+                                runs.add(() -> {
+                                    String row = runOne(loss, corrupt, delay, size, speedup, (long) seed);
+                                    synchronized (out) {
+                                        out.println(row);
+                                        out.flush();
+                                    }
+                                });
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (Runnable r : runs) {
+            results.add(pool.submit(r));
+        }
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // A single quiet simulation, returning its CSV row
+    private String runOne(double loss, double corrupt, double delay, double size, double speedup, long seed) {
+        Configuration runConfiguration = configuration.copy();
+        runConfiguration.set("messagesize", Double.toString(size));
+        runConfiguration.set("realtime", Double.toString(speedup));
+        NetworkSimulator simulator = new NetworkSimulator();
+        simulator.initSimulator(messages, loss, corrupt, delay, seed, SimulatorLog.off());
+        simulator.setConfiguration(runConfiguration);
+        simulator.runSimulator();
+
+        Metrics m = simulator.getMetrics();
+        return String.format(Locale.ROOT, "%s,%s,%s,%s,%s,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%s,%s,%s,%s,%d,%s,%d,%d,%s,%d,%s,%s,%s,%d,%d",
+                loss, corrupt, delay, size, speedup, seed, messages,
+                m.getMessagesOffered(), m.getMessagesDropped(), m.getMessagesDelivered(), m.getPacketsSent(), m.getRetransmissions(),
+                m.getPacketsLost(), m.getPacketsCorrupted(), m.getTimeouts(),
+                m.getCompletionTime(), m.getThroughput(), m.getGoodput(), m.getUtilisation(),
+                m.getMaxQueueDepth(), m.getAverageQueueDelay(),
+                m.getBytesDelivered(), m.getDataBytesSent() + m.getAckBytesSent(), m.getEfficiency(),
+                m.getEventsLate(), m.getMaxLateness(), speedup > 0 ? m.isKeepingUp() : "",
+                m.getAverageLinkQueueDepth(Link.TOB), m.getMaxLinkQueueDepth(Link.TOB), m.getLinkPacketsDropped(Link.TOB));
+    }
+}
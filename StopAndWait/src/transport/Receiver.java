@@ -11,10 +11,22 @@ public class Receiver extends NetworkHost {
     */
     private final static int MINSEQUENCENUMBER = 0;
     private final static int MAXSEQUENCENUMBER = 1;
+    //Delayed ACKs: by default every packet is acknowledged straight away (transport.ackevery = 1).
+    //Otherwise an ACK is sent for every ackevery-th new packet, or transport.ackdelay after the first unacknowledged one.
+    //With only one packet in flight the ACK nearly always waits for the delay, so this mainly trades latency for fewer ACKs.
+    private final static int DEFAULTACKEVERY = 1;
+    private final static double DEFAULTACKDELAY = 10;
     
     //Used to ensure packets are arriving in order
     private int expectedSequenceNumber;
     
+    //How many new packets to acknowledge with one ACK, and how long the first of them can wait for it.
+    private int ackEvery;
+    private double ackDelay;
+    //Packets delivered but not yet acknowledged, and whether the delayed ACK timer is running.
+    private int unacknowledgedPackets;
+    private boolean ackTimerRunning;
+    
     //Increments the value of the private field expectedSequenceNumer and if it exceeds the maximum value it rolls over to the minimum
     private void incrementExpectedSequenceNumber() {
         expectedSequenceNumber += 1;
@@ -32,13 +44,20 @@ public class Receiver extends NetworkHost {
         return previousSequenceNumber;
     }
     
-    //Gets the checksum for a string by summing the ASCII value of every character.
-    private int checksumString (String string) {
-        int runningSum = 0;
-        for (char ch : string.toCharArray()) {
-            runningSum += (int) ch;
+    //Sends an ACK for the given sequence number, which also covers any delayed ACK.
+    private void sendAck(int ackNum) {
+        int packetSeqNum = -1;
+        int packetAckNum = ackNum;
+        String packetData = "";
+        Packet ack = new Packet(packetSeqNum, packetAckNum, 0, packetData);
+        ack.setChecksum(getPacketChecksum().compute(ack));
+        udtSend(ack);
+        
+        unacknowledgedPackets = 0;
+        if (ackTimerRunning) {
+            stopTimer();
+            ackTimerRunning = false;
         }
-        return runningSum;
     }
     
     /**
@@ -47,25 +66,33 @@ public class Receiver extends NetworkHost {
      * @return false is the packet is definitely corrupted, true otherwise.
      */
     private boolean validateChecksum (Packet p) {
-        int calculatedChecksum = p.getSeqnum() + p.getAcknum() + checksumString(p.getPayload());
-        return calculatedChecksum == p.getChecksum();
+        return getPacketChecksum().isValid(p);
     }
     
     // This is the constructor.  Don't touch!
     public Receiver(int entityName) {
         super(entityName);
     }
+    
+    // Constructor for a host of a given simulator, so several simulations can run side by side.
+    public Receiver(int entityName, NetworkSimulator simulator) {
+        super(entityName, simulator);
+    }
 
-    //Initialises the values of expectedSequenceNumber
+    //Initialises the values of expectedSequenceNumber and the delayed ACK settings
     @Override
     public void init() {
         expectedSequenceNumber = MINSEQUENCENUMBER;
+        ackEvery = getSimulator().getConfiguration().getInt("ackevery", DEFAULTACKEVERY);
+        ackDelay = getSimulator().getConfiguration().getDouble("ackdelay", DEFAULTACKDELAY);
+        unacknowledgedPackets = 0;
+        ackTimerRunning = false;
     }
 
     /**
      * This method checks that the packet isn't corrupted before continuing - if it is, no ACK is sent and the sender resends the packet.
      * If it isn't corrupted, the sequence number is check to find out if it's a new packet or a duplicate of previous packet.
-     * If it's a new packet, the data is sent up to the application layer and an ACK packet is sent.
+     * If it's a new packet, the data is sent up to the application layer and an ACK packet is sent (or delayed, see transport.ackevery).
      * If it's a duplicate of the previous packet, the ACK for that packet is resent and the data is ignored.
      * @param packet from the network layer, contains a payload up to 20 bytes which is to be sent to the application layer.
      */
@@ -74,30 +101,34 @@ public class Receiver extends NetworkHost {
         //Only if the packet isn't corrupted do we check the seqNumber
         if (validateChecksum(packet)) {
             int seqNumber = packet.getSeqnum();
-            Packet outputPacket;
             //Accepts next expected packet, sends on the data, and updates next expected value
             if (seqNumber == expectedSequenceNumber) {
                 deliverData(packet.getPayload());
-                int packetSeqNum = -1;
-                int packetAckNum = seqNumber;
-                String packetData = "";
-                int packetChecksum = packetSeqNum + packetAckNum;
-                outputPacket = new Packet(packetSeqNum, packetAckNum, packetChecksum, packetData);
                 incrementExpectedSequenceNumber();
-                udtSend(outputPacket);
+                unacknowledgedPackets++;
+                if (unacknowledgedPackets >= ackEvery) {
+                    sendAck(seqNumber);
+                } else if (!ackTimerRunning) {
+                    startTimer(ackDelay);
+                    ackTimerRunning = true;
+                }
             }
 
             //Accepts previous packet, used if the last ACK packet was lost or corrupted
             //All that needs to be done in this case is to resend the ACK - the application layer already has the payload.
             else if (seqNumber == getPreviousSequenceNumber()) {
-                int packetSeqNum = -1;
-                int packetAckNum = seqNumber;
-                String packetData = "";
-                int packetChecksum = packetSeqNum + packetAckNum;
-                outputPacket = new Packet(packetSeqNum, packetAckNum, packetChecksum, packetData);
-                udtSend(outputPacket);
+                sendAck(seqNumber);
             }
         }
     }
+    
+    /**
+     * Called when the delayed ACK timer expires: acknowledge the last packet delivered.
+     */
+    @Override
+    public void timerInterrupt() {
+        ackTimerRunning = false;
+        sendAck(getPreviousSequenceNumber());
+    }
 
 }
@@ -0,0 +1,96 @@
+package transport;
+
+/**
+ * The bounded queue between the sending application and the Sender.
+ * Messages the Sender can't send yet wait here, oldest first, until its window opens.
+ * The queue is a ring of fixed capacity allocated once, so queueing a message allocates nothing;
+ * when it's full the simulator applies back pressure to the application (transport.backpressure).
+ */
+public class SendQueue {
+
+    private final Message[] messages;   // the queued messages, oldest in slot head
+    private final double[] queuedAt;    // when each message was queued (same slots as messages)
+    private int head;
+    private int size;
+    private int dataLength;             // total length of the data of the queued messages
+
+    private final Metrics metrics;      // told about every change of depth, and the delay of every message leaving
+
+    public SendQueue(int capacity, Metrics metrics) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1, not " + capacity);
+        }
+        messages = new Message[capacity];
+        queuedAt = new double[capacity];
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds a message to the end of the queue, unless it's full
+     * @param message the message
+     * @param time the current simulated time
+     * @return true if the message was queued, false if the queue is full
+     */
+    public boolean offer(Message message, double time) {
+        if (size == messages.length) {
+            return false;
+        }
+        int tail = (head + size) % messages.length;
+        messages[tail] = message;
+        queuedAt[tail] = time;
+        size++;
+        dataLength += message.getData().length();
+        metrics.queueDepth(time, size);
+        return true;
+    }
+
+    /**
+     * Removes the oldest message
+     * @param time the current simulated time
+     * @return the message, or null if the queue is empty
+     */
+    public Message poll(double time) {
+        if (size == 0) {
+            return null;
+        }
+        Message message = messages[head];
+        messages[head] = null;
+        metrics.messageDequeued(time - queuedAt[head]);
+        head = (head + 1) % messages.length;
+        size--;
+        dataLength -= message.getData().length();
+        metrics.queueDepth(time, size);
+        return message;
+    }
+
+    // The oldest message, left in the queue (null if it's empty)
+    public Message peek() {
+        return messages[head];
+    }
+
+    // When the oldest message was queued (only meaningful if the queue isn't empty)
+    public double oldestQueuedAt() {
+        return queuedAt[head];
+    }
+
+    // The total length of the data of the queued messages
+    public int dataLength() {
+        return dataLength;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == messages.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return messages.length;
+    }
+}
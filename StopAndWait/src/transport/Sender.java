@@ -31,29 +31,24 @@ public class Sender extends NetworkHost {
         }
     }
     
-    //Gets the checksum for a string by summing the ASCII value of every character.
-    private int checksumOfString (String string) {
-        int runningSum = 0;
-        for (char ch : string.toCharArray()) {
-            runningSum += (int) ch;
-        }
-        return runningSum;
-    }
-    
     /**
      * Calculates the checksum of a received packet and compares it to the packet's stated checksum.
      * @param packet the packet to be checked.
      * @return false is the packet is definitely corrupted, true otherwise.
      */
     private boolean validateChecksum (Packet packet) {
-        int calculatedChecksum = packet.getSeqnum() + packet.getAcknum() + checksumOfString(packet.getPayload());
-        return calculatedChecksum == packet.getChecksum();
+        return getPacketChecksum().isValid(packet);
     }
     
     // This is the constructor.  Don't touch!
     public Sender(int entityName) {
         super(entityName);
     }
+    
+    // Constructor for a host of a given simulator, so several simulations can run side by side.
+    public Sender(int entityName, NetworkSimulator simulator) {
+        super(entityName, simulator);
+    }
 
     //Initialises the values of currentSequenceNumber and currentlySending.
     @Override
@@ -66,35 +61,45 @@ public class Sender extends NetworkHost {
      * This method wraps the message up into a packet with appropriate seqnum, acknum, checksum, and payload (message). 
      * It includes features that ensure in-order delivery (using sequence number but not updating it - this only happens once an ACK is received).
      * It includes features that account for packet loss and corruption (storing the packet, setting the timer to resend).
-     * It checks that the network is available before doing any of this - if a message is currently being sent, this message is dropped.
+     * @param message the message to be sent; the network must not be busy with another one.
+     */
+    private void sendMessage(Message message) {
+        currentlySending = true;
+        
+        //Sequence number is taken from the Senders current sequence number, ACK number is set to 0 (indicating that this isn't an ACK message),
+        //the payload is taken from the message (input to this method), and the checksum is calculated using all these values.
+        String data = message.getData();
+        int ackNum = -1;
+        
+        //The above values are put together in a packet, saved in case of packet loss/corruption, and sent to the network layer.
+        Packet outputPacket = new Packet(currentSequenceNumber, ackNum, 0, data);
+        outputPacket.setChecksum(getPacketChecksum().compute(outputPacket));
+        currentPacket = outputPacket;
+        udtSend(outputPacket);
+        //After the timer expires, the message is assumed to be lost, so can be resent.
+        startTimer(EXPECTEDRTT);
+    }
+    
+    /**
+     * Sends a message from the application layer if the network is available.
+     * If a message is currently being sent (or others are already waiting), this message waits in the send queue until the ones before it are acknowledged;
+     * if the queue is full the application gets back pressure (see transport.backpressure).
      * @param message from the application layer, up to 20 bytes, to be sent over the network.
      */
     @Override
     public void output(Message message) {
-        if(!currentlySending) {
-            currentlySending = true;
-            
-            //Sequence number is taken from the Senders current sequence number, ACK number is set to 0 (indicating that this isn't an ACK message),
-            //the payload is taken from the message (input to this method), and the checksum is calculated using all these values.
-            String data = message.getData();
-            int ackNum = -1;
-            int checksum = currentSequenceNumber + ackNum + checksumOfString(data);
-            
-            //The above values are put together in a packet, saved in case of packet loss/corruption, and sent to the network layer.
-            Packet outputPacket = new Packet(currentSequenceNumber, ackNum, checksum, data);
-            currentPacket = outputPacket;
-            udtSend(outputPacket);
-            //After the timer expires, the message is assumed to be lost, so can be resent.
-            startTimer(EXPECTEDRTT);
+        if (!currentlySending && !hasQueuedMessages()) {
+            sendMessage(message);
+        } else {
+            queueMessage(message);
         }
-        //By design, when currently sending the 'if' doesn't trigger, so no code is executed, essentially dropping the data
     }
     
     
     /**
      * When a packet is received, it's checked for corruption using the private validation method.
      * If it's not corrupted and has the correct ACK number (the sequence number of the last packet sent), it is accepted.
-     * The method then updates some class variables and stops the timer, so that the sender is ready to send the next packet.
+     * The method then updates some class variables and stops the timer, and sends the next message waiting in the send queue, if any.
      * The method ignores duplicate ACKS by only operating if the ACK number matches that of the last sent packet.
      * @param packet The incoming ACK packet.
      */
@@ -104,6 +109,9 @@ public class Sender extends NetworkHost {
             currentlySending = false;
             incrementSequenceNumber();
             stopTimer();
+            if (hasQueuedMessages()) {
+                sendMessage(nextQueuedMessage());
+            }
         }
     }
     